@@ -11,6 +11,6 @@ public class Main {
 		cfg.width = 1280;
 		cfg.height = 720;
 		
-		new LwjglApplication(new LudumDare(), cfg);
+		new LwjglApplication(new LudumDare(new ThreadExecutor()), cfg);
 	}
 }
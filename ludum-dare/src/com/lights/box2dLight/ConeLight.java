@@ -34,16 +34,32 @@ public class ConeLight extends PositionalLight {
 	public void setDirection(float direction) {
 
 		this.direction = direction;
-		for (int i = 0; i < rayNum; i++) {
+		setEndPoints();
+		dirty = true;
+		if (staticLight)
+			staticUpdate();
+	}
+
+	@Override
+	final void setEndPoints() {
+		for (int i = 0; i < activeRays; i++) {
 			float angle = direction + coneDegree - 2f * coneDegree * i
-					/ (rayNum - 1f);
+					/ (activeRays - 1f);
 			final float s = sin[i] = MathUtils.sinDeg(angle);
 			final float c = cos[i] = MathUtils.cosDeg(angle);
 			endX[i] = distance * c;
 			endY[i] = distance * s;
 		}
-		if (staticLight)
-			staticUpdate();
+	}
+
+	@Override
+	float getSweepStart() {
+		return direction - coneDegree;
+	}
+
+	@Override
+	float getSweepRange() {
+		return 2f * coneDegree;
 	}
 
 	/**
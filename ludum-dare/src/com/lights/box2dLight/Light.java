@@ -23,6 +23,11 @@ public abstract class Light {
 
 	protected RayHandler rayHandler;
 	protected boolean culled = false;
+	/**
+	 * parameters changed since the last update, moving bodies are checked by
+	 * the light itself
+	 */
+	boolean dirty = true;
 	protected int rayNum;
 	protected int vertexNum;
 	protected float distance;
@@ -68,6 +73,7 @@ public abstract class Light {
 			color = DefaultColor;
 			colorF = DefaultColor.toFloatBits();
 		}
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -89,6 +95,7 @@ public abstract class Light {
 	public void setColor(float r, float g, float b, float a) {
 		color.set(r, g, b, a);
 		colorF = color.toFloatBits();
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -103,8 +110,37 @@ public abstract class Light {
 
 	abstract void update();
 
+	/**
+	 * First part of a parallel update, runs on the thread that steps the
+	 * world. Lights that can not be split just update here.
+	 * 
+	 * @param snapshot
+	 *            compute() must not touch the world
+	 * @return whether compute() and upload() have to run
+	 */
+	boolean prepare(boolean snapshot) {
+		update();
+		return false;
+	}
+
+	/** builds the mesh vertices, may run on any thread */
+	void compute() {
+	}
+
+	/** sends the vertices to the meshes on the GL thread */
+	void upload() {
+	}
+
 	abstract void render();
 
+	/**
+	 * Adds the light to the batch, lights that are not batched are rendered
+	 * right away.
+	 */
+	void render(LightBatch batch) {
+		render();
+	}
+
 	public abstract void setDirection(float directionDegree);
 
 	public void remove() {
@@ -175,6 +211,7 @@ public abstract class Light {
 	public abstract float getY();
 
 	void staticUpdate() {
+		dirty = true;
 		boolean tmp = rayHandler.culling;
 		staticLight = !staticLight;
 		rayHandler.culling = false;
@@ -197,6 +234,7 @@ public abstract class Light {
 			return;
 
 		if (active) {
+			dirty = true;
 			rayHandler.lightList.add(this);
 			rayHandler.disabledLights.removeValue(this, true);
 		} else {
@@ -227,6 +265,7 @@ public abstract class Light {
 	 */
 	public final void setXray(boolean xray) {
 		this.xray = xray;
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -254,6 +293,7 @@ public abstract class Light {
 	 */
 	public final void setStaticLight(boolean staticLight) {
 		this.staticLight = staticLight;
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -274,6 +314,7 @@ public abstract class Light {
 	 */
 	public final void setSoft(boolean soft) {
 		this.soft = soft;
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -294,6 +335,7 @@ public abstract class Light {
 	 */
 	public final void setSoftnessLenght(float softShadowLenght) {
 		this.softShadowLenght = softShadowLenght;
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -355,6 +397,34 @@ public abstract class Light {
 		}
 	};
 
+	/** scale from the fraction of the ray being cast to the light distance */
+	float rayScale = 1f;
+
+	/**
+	 * same as ray for the bodies that are not static occluders, the polygon
+	 * built from them is already in mx, my and f
+	 */
+	final RayCastCallback dynamicRay = new RayCastCallback() {
+		@Override
+		final public float reportRayFixture(Fixture fixture, Vector2 point,
+				Vector2 normal, float fraction) {
+
+			if (!acceptsDynamic(fixture))
+				return -1;
+			mx[m_index] = point.x;
+			my[m_index] = point.y;
+			f[m_index] = fraction * rayScale;
+			return fraction;
+		}
+	};
+
+	final boolean acceptsDynamic(Fixture fixture) {
+		if (rayHandler.occluders != null
+				&& rayHandler.occluders.contains(fixture.getBody()))
+			return false;
+		return (filterA == null) || contactFilter(fixture);
+	}
+
 	final boolean contactFilter(Fixture fixtureB) {
 		Filter filterB = fixtureB.getFilterData();
 
@@ -376,6 +446,7 @@ public abstract class Light {
 	 */
 	public void setContactFilter(Filter filter) {
 		filterA = filter;
+		dirty = true;
 	}
 
 	/**
@@ -391,6 +462,7 @@ public abstract class Light {
 		filterA.categoryBits = categoryBits;
 		filterA.groupIndex = groupIndex;
 		filterA.maskBits = maskBits;
+		dirty = true;
 	}
 
 }
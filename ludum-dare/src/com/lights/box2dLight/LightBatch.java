@@ -0,0 +1,166 @@
+package com.lights.box2dLight;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+
+/**
+ * Collects the triangle fans and strips of many lights into one indexed
+ * triangle list so they are drawn with a single call. Lights are blended
+ * additively, the order they end up in does not matter.
+ *
+ * Vertices are x, y, packed color and s, as in the gles2.0 light meshes. They
+ * are assembled on the CPU, only flush() touches GL and the mesh is not
+ * created before the first one.
+ */
+final class LightBatch {
+
+	/** takes the batched triangles instead of the mesh */
+	interface Drawer {
+		void draw(LightBatch batch);
+	}
+
+	final static int VERTEX_SIZE = 4;
+
+	float vertices[];
+	short indices[];
+	int vertexNum = 0;
+	int indexNum = 0;
+
+	/** draw calls issued since the last begin() */
+	int drawCalls = 0;
+
+	/** draws instead of the mesh when set, so the batch runs without GL */
+	Drawer drawer = null;
+
+	private int maxVertices;
+	private Mesh mesh;
+	private int meshVertices = 0;
+	private ShaderProgram shader;
+
+	/**
+	 * @param maxVertices
+	 *            vertices drawn per call, at most 65536 so they can be indexed
+	 *            with shorts. A single bigger primitive grows the batch.
+	 */
+	LightBatch(int maxVertices) {
+		setCapacity(maxVertices);
+	}
+
+	private void setCapacity(int maxVertices) {
+		this.maxVertices = maxVertices;
+		vertices = new float[maxVertices * VERTEX_SIZE];
+		indices = new short[maxVertices * 3];
+	}
+
+	void begin(ShaderProgram shader) {
+		this.shader = shader;
+		drawCalls = 0;
+	}
+
+	void end() {
+		flush();
+		shader = null;
+	}
+
+	/**
+	 * Adds a triangle fan around its first vertex.
+	 *
+	 * @param size
+	 *            number of floats used in fan
+	 */
+	void addFan(float fan[], int size) {
+		final int count = size / VERTEX_SIZE;
+		if (count < 3)
+			return;
+
+		final int first = addVertices(fan, size);
+		for (int i = 1; i < count - 1; i++) {
+			indices[indexNum++] = (short) first;
+			indices[indexNum++] = (short) (first + i);
+			indices[indexNum++] = (short) (first + i + 1);
+		}
+	}
+
+	/**
+	 * Adds a triangle strip.
+	 *
+	 * @param size
+	 *            number of floats used in strip
+	 */
+	void addStrip(float strip[], int size) {
+		final int count = size / VERTEX_SIZE;
+		if (count < 3)
+			return;
+
+		final int first = addVertices(strip, size);
+		for (int i = 0; i < count - 2; i++) {
+			indices[indexNum++] = (short) (first + i);
+			indices[indexNum++] = (short) (first + i + 1);
+			indices[indexNum++] = (short) (first + i + 2);
+		}
+	}
+
+	/**
+	 * Copies the vertices, drawing what is already batched if they do not fit.
+	 *
+	 * @return index of the first vertex copied
+	 */
+	private int addVertices(float source[], int size) {
+		final int count = size / VERTEX_SIZE;
+		if (vertexNum + count > maxVertices) {
+			flush();
+			if (count > maxVertices)
+				setCapacity(count);
+		}
+
+		System.arraycopy(source, 0, vertices, vertexNum * VERTEX_SIZE, count
+				* VERTEX_SIZE);
+		final int first = vertexNum;
+		vertexNum += count;
+		return first;
+	}
+
+	/**
+	 * Draws everything batched so far with the shader given to begin().
+	 */
+	void flush() {
+		if (indexNum > 0) {
+			if (drawer != null)
+				drawer.draw(this);
+			else
+				draw();
+			drawCalls++;
+		}
+		vertexNum = 0;
+		indexNum = 0;
+	}
+
+	/**
+	 * Uploads the first vertexNum vertices and indexNum indices and renders
+	 * them.
+	 */
+	private void draw() {
+		if (meshVertices < maxVertices) {
+			if (mesh != null)
+				mesh.dispose();
+			meshVertices = maxVertices;
+			mesh = new Mesh(false, maxVertices, maxVertices * 3,
+					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
+					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
+					new VertexAttribute(Usage.Generic, 1, "s"));
+		}
+		mesh.setVertices(vertices, 0, vertexNum * VERTEX_SIZE);
+		mesh.setIndices(indices, 0, indexNum);
+		mesh.render(shader, GL20.GL_TRIANGLES, 0, indexNum);
+	}
+
+	void dispose() {
+		if (mesh != null)
+			mesh.dispose();
+		mesh = null;
+		meshVertices = 0;
+	}
+}
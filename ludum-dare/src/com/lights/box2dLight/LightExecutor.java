@@ -0,0 +1,22 @@
+package com.lights.box2dLight;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Runs the geometry of the lights on worker threads, see
+ * RayHandler.setExecutor(). No threads are created by the library itself so it
+ * still works where they are not available.
+ */
+public interface LightExecutor {
+
+	/**
+	 * Runs all the tasks, possibly at the same time, and returns once every
+	 * one of them is done.
+	 */
+	public void invokeAll(Array<? extends Runnable> tasks);
+
+	/**
+	 * @return number of worker threads besides the calling one
+	 */
+	public int getParallelism();
+}
@@ -33,9 +33,10 @@ public class PointLight extends PositionalLight {
 		this(rayHandler, rays, Light.DefaultColor, 15f, 0f, 0f);
 	}
 
+	@Override
 	final void setEndPoints() {
-		float angleNum = 360f / (rayNum - 1);
-		for (int i = 0; i < rayNum; i++) {
+		float angleNum = 360f / (activeRays - 1);
+		for (int i = 0; i < activeRays; i++) {
 			final float angle = angleNum * i;
 			sin[i] = MathUtils.sinDeg(angle);
 			cos[i] = MathUtils.cosDeg(angle);
@@ -48,6 +49,16 @@ public class PointLight extends PositionalLight {
 	public void setDirection(float directionDegree) {
 	}
 
+	@Override
+	float getSweepStart() {
+		return 0f;
+	}
+
+	@Override
+	float getSweepRange() {
+		return 360f;
+	}
+
 	/**
 	 * setDistance(float dist) MIN capped to 1cm
 	 * 
@@ -57,6 +68,7 @@ public class PointLight extends PositionalLight {
 		dist *= RayHandler.gammaCorrectionParameter;
 		this.distance = dist < 0.01f ? 0.01f : dist;
 		setEndPoints();
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -9,6 +9,13 @@ import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.QueryCallback;
+import com.badlogic.gdx.physics.box2d.RayCastCallback;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.utils.Array;
 
 public abstract class PositionalLight extends Light {
 
@@ -22,6 +29,32 @@ public abstract class PositionalLight extends Light {
 	final float endX[];
 	final float endY[];
 
+	/** rays cast per update, at most rayNum, see RayHandler.setRayBudget() */
+	int activeRays;
+	/** number of points in mx, my and f, activeRays unless built by the sweep */
+	int pointNum;
+	float pointCos[];
+	float pointSin[];
+	private int meshVertices;
+	private VisibilitySweep sweep;
+	private final Vector2 tmpVertex = new Vector2();
+
+	/** position the current mesh was built at */
+	private float lastX, lastY;
+	/** fixtures that may cast shadows besides the static occluders */
+	private final Array<Fixture> nearby = new Array<Fixture>(false, 16);
+	/** x, y and angle of the body of each nearby fixture */
+	private float nearbyState[] = new float[48];
+	private boolean nearbyChanged;
+
+	/** copy of the nearby fixtures compute() casts against, null until used */
+	private ShadowCasters casters;
+	private boolean useCasters;
+	/** vertices packed by compute() for the soft shadow mesh */
+	float softSegments[];
+	/** number of floats packed in segments and softSegments */
+	int lightSize, softSize;
+
 	/**
 	 * attach positional light to automatically follow body. Position is fixed
 	 * to given offset.
@@ -31,6 +64,7 @@ public abstract class PositionalLight extends Light {
 		this.body = body;
 		bodyOffsetX = offsetX;
 		bodyOffsetY = offSetY;
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -68,6 +102,7 @@ public abstract class PositionalLight extends Light {
 	public void setPosition(float x, float y) {
 		start.x = x;
 		start.y = y;
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
@@ -76,12 +111,34 @@ public abstract class PositionalLight extends Light {
 	public void setPosition(Vector2 position) {
 		start.x = position.x;
 		start.y = position.y;
+		dirty = true;
 		if (staticLight)
 			staticUpdate();
 	}
 
 	@Override
 	void update() {
+		if (prepare(false)) {
+			compute();
+			upload();
+		}
+	}
+
+	/**
+	 * Everything that needs the world: follows the body, culls and checks
+	 * whether the mesh has to be rebuilt.
+	 *
+	 * The mesh is kept unless the light moved, was set dirty, has been culled
+	 * since the last rebuild or a fixture in its radius moved, turned, entered
+	 * or left.
+	 *
+	 * @param snapshot
+	 *            copy the fixtures around the light so compute() does not
+	 *            touch the world
+	 * @return whether compute() and upload() have to run
+	 */
+	@Override
+	boolean prepare(boolean snapshot) {
 		if (body != null && !staticLight) {
 			final Vector2 vec = body.getPosition();
 			float angle = body.getAngle();
@@ -91,34 +148,267 @@ public abstract class PositionalLight extends Light {
 			final float dY = bodyOffsetX * sin + bodyOffsetY * cos;
 			start.x = vec.x + dX;
 			start.y = vec.y + dY;
-			setDirection(angle * MathUtils.radiansToDegrees);
+			final float degrees = angle * MathUtils.radiansToDegrees;
+			if (degrees != direction)
+				setDirection(degrees);
 		}
 
 		if (rayHandler.culling) {
 			culled = ((!rayHandler.intersect(start.x, start.y, distance
 					+ softShadowLenght)));
-			if (culled)
-				return;
+			if (culled) {
+				// nothing is checked while culled
+				dirty = true;
+				return false;
+			}
 		}
 
 		if (staticLight)
+			return false;
+
+		nearbyChanged = false;
+		if (rayHandler.world != null && !xray)
+			queryNearby();
+		else
+			nearby.clear();
+
+		if (!dirty && !nearbyChanged && start.x == lastX && start.y == lastY) {
+			rayHandler.lightSkippedLastFrame++;
+			return false;
+		}
+		dirty = false;
+		lastX = start.x;
+		lastY = start.y;
+
+		useCasters = snapshot && rayHandler.world != null && !xray;
+		if (useCasters) {
+			if (casters == null)
+				casters = new ShadowCasters();
+			casters.clear();
+			for (int i = 0; i < nearby.size; i++) {
+				casters.add(nearby.get(i));
+			}
+		}
+
+		if (rayHandler.occluders != null && !xray) {
+			if (sweep == null)
+				sweep = new VisibilitySweep();
+			sweep.begin(start.x, start.y, distance, getSweepStart(),
+					getSweepRange());
+			for (int i = 0; i < nearby.size; i++) {
+				addDense(nearby.get(i));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the light polygon and packs the vertices. Only touches the world
+	 * if prepare() did not take a snapshot, otherwise it can run on any thread.
+	 */
+	@Override
+	void compute() {
+		if (rayHandler.occluders != null && !xray) {
+			sweep();
+			pack();
 			return;
+		}
 
-		for (int i = 0; i < rayNum; i++) {
-			m_index = i;
+		pointNum = activeRays;
+		pointCos = cos;
+		pointSin = sin;
+		for (int i = 0; i < activeRays; i++) {
 			f[i] = 1f;
-			tmpEnd.x = endX[i] + start.x;
-			mx[i] = tmpEnd.x;
-			tmpEnd.y = endY[i] + start.y;
-			my[i] = tmpEnd.y;
-			if (rayHandler.world != null && !xray) {
-				rayHandler.world.rayCast(ray, start, tmpEnd);
+			mx[i] = endX[i] + start.x;
+			my[i] = endY[i] + start.y;
+			if (rayHandler.world != null && !xray)
+				castRay(i, ray);
+		}
+		pack();
+	}
+
+	/**
+	 * Casts from the start to point i and moves it to the closest hit, f[i]
+	 * is scaled from the fraction of this ray.
+	 */
+	private void castRay(int i, RayCastCallback callback) {
+		if (useCasters) {
+			final float fraction = casters.cast(start.x, start.y, mx[i], my[i]);
+			if (fraction < 1f) {
+				mx[i] = start.x + (mx[i] - start.x) * fraction;
+				my[i] = start.y + (my[i] - start.y) * fraction;
+				f[i] *= fraction;
 			}
+			return;
+		}
+
+		m_index = i;
+		rayScale = f[i];
+		tmpEnd.x = mx[i];
+		tmpEnd.y = my[i];
+		rayHandler.world.rayCast(callback, start, tmpEnd);
+	}
+
+	/**
+	 * Builds the light polygon analytically from the static occluders, only
+	 * the directions where other fixtures may be in front of them are raycast.
+	 * The attached body is ignored, a ray starting inside a fixture does not
+	 * hit it anyway. The sweep is set up by prepare().
+	 */
+	void sweep() {
+		final int num = sweep.compute(rayHandler.occluders, activeRays);
+		setPointNum(num);
+		System.arraycopy(sweep.x, 0, mx, 0, num);
+		System.arraycopy(sweep.y, 0, my, 0, num);
+		System.arraycopy(sweep.fraction, 0, f, 0, num);
+		pointCos = sweep.cos;
+		pointSin = sweep.sin;
+
+		if (rayHandler.world == null)
+			return;
+
+		for (int i = 0; i < num; i++) {
+			final float d = f[i] * distance;
+			if (d <= 0f || sweep.near[i] >= d)
+				continue;
+			castRay(i, dynamicRay);
+		}
+	}
+
+	/**
+	 * Collects the fixtures around the light that can cast shadows, other than
+	 * the static occluders and the attached body, and checks whether any of
+	 * their bodies moved since the last update. A different order counts as a
+	 * change.
+	 */
+	private void queryNearby() {
+		final int lastNum = nearby.size;
+		nearby.clear();
+		rayHandler.world.QueryAABB(nearbyQuery, start.x - distance, start.y
+				- distance, start.x + distance, start.y + distance);
+		if (nearby.size != lastNum)
+			nearbyChanged = true;
+	}
+
+	final QueryCallback nearbyQuery = new QueryCallback() {
+		@Override
+		public boolean reportFixture(Fixture fixture) {
+			final Body fixtureBody = fixture.getBody();
+			if (fixtureBody == body || !acceptsDynamic(fixture))
+				return true;
+
+			final int i = nearby.size * 3;
+			if (nearbyState.length < i + 3) {
+				float newState[] = new float[nearbyState.length * 2];
+				System.arraycopy(nearbyState, 0, newState, 0, i);
+				nearbyState = newState;
+			}
+
+			final Vector2 position = fixtureBody.getPosition();
+			final float angle = fixtureBody.getAngle();
+			if (nearbyState[i] != position.x || nearbyState[i + 1] != position.y
+					|| nearbyState[i + 2] != angle) {
+				nearbyState[i] = position.x;
+				nearbyState[i + 1] = position.y;
+				nearbyState[i + 2] = angle;
+				nearbyChanged = true;
+			}
+			nearby.add(fixture);
+			return true;
+		}
+	};
+
+	private void addDense(Fixture fixture) {
+		final Body fixtureBody = fixture.getBody();
+		final Shape shape = fixture.getShape();
+
+		if (fixture.getType() == Shape.Type.Circle) {
+			final Vector2 centre = fixtureBody
+					.getWorldPoint(((CircleShape) shape).getPosition());
+			sweep.addDense(centre.x, centre.y, shape.getRadius());
+		} else if (fixture.getType() == Shape.Type.Polygon) {
+			final PolygonShape polygon = (PolygonShape) shape;
+			float radius2 = 0f;
+			for (int i = 0; i < polygon.getVertexCount(); i++) {
+				polygon.getVertex(i, tmpVertex);
+				radius2 = Math.max(radius2, tmpVertex.len2());
+			}
+			final Vector2 centre = fixtureBody.getPosition();
+			sweep.addDense(centre.x, centre.y, (float) Math.sqrt(radius2)
+					+ shape.getRadius());
+		} else {
+			sweep.addDense(start.x, start.y, Float.POSITIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * Changes how many of the rays are cast, they still cover the whole light.
+	 * Buffers are sized for rayNum so nothing is allocated.
+	 */
+	final void setActiveRays(int rays) {
+		rays = Math.max(MIN_RAYS, Math.min(rays, rayNum));
+		if (rays == activeRays)
+			return;
+
+		activeRays = rays;
+		setEndPoints();
+		dirty = true;
+		if (staticLight)
+			staticUpdate();
+	}
+
+	/** spreads the first activeRays directions over the light */
+	abstract void setEndPoints();
+
+	/** direction the sweep starts at in degrees */
+	abstract float getSweepStart();
+
+	/** counter clockwise span of the light in degrees */
+	abstract float getSweepRange();
+
+	/**
+	 * Grows the point arrays, the meshes are grown by upload()
+	 */
+	private void setPointNum(int num) {
+		pointNum = num;
+		if (mx.length <= num) {
+			mx = new float[num + 1];
+			my = new float[num + 1];
+			f = new float[num + 1];
+			segments = new float[(num + 1) * 4];
+			softSegments = new float[num * 8];
 		}
-		setMesh();
 	}
 
 	void setMesh() {
+		pack();
+		upload();
+	}
+
+	/**
+	 * Sends the vertices packed by compute() to the meshes, has to run on the
+	 * GL thread. Nothing to do when the lights are batched, the batch reads
+	 * the packed vertices.
+	 */
+	@Override
+	void upload() {
+		if (rayHandler.isGL20 && rayHandler.batching)
+			return;
+
+		if (meshVertices <= pointNum)
+			createMeshes(Math.max(pointNum + 1, meshVertices * 3 / 2));
+
+		lightMesh.setVertices(segments, 0, lightSize);
+		if (softSize > 0)
+			softShadowMesh.setVertices(softSegments, 0, softSize);
+	}
+
+	/**
+	 * Packs the light polygon into segments and softSegments, the color of
+	 * each vertex is computed here on gles1.0.
+	 */
+	private void pack() {
+		softSize = 0;
 		if (rayHandler.isGL20) {
 			// ray starting point
 			int size = 0;
@@ -128,13 +418,13 @@ public abstract class PositionalLight extends Light {
 			segments[size++] = colorF;
 			segments[size++] = 1;
 			// rays ending points.
-			for (int i = 0; i < rayNum; i++) {
+			for (int i = 0; i < pointNum; i++) {
 				segments[size++] = mx[i];
 				segments[size++] = my[i];
 				segments[size++] = colorF;
 				segments[size++] = 1 - f[i];
 			}
-			lightMesh.setVertices(segments, 0, size);
+			lightSize = size;
 
 			if (!soft || xray)
 				return;
@@ -142,18 +432,20 @@ public abstract class PositionalLight extends Light {
 			size = 0;
 			// rays ending points.
 
-			for (int i = 0; i < rayNum; i++) {
-				segments[size++] = mx[i];
-				segments[size++] = my[i];
-				segments[size++] = colorF;
+			for (int i = 0; i < pointNum; i++) {
+				softSegments[size++] = mx[i];
+				softSegments[size++] = my[i];
+				softSegments[size++] = colorF;
 				final float s = (1 - f[i]);
-				segments[size++] = s;
-				segments[size++] = mx[i] + s * softShadowLenght * cos[i];
-				segments[size++] = my[i] + s * softShadowLenght * sin[i];
-				segments[size++] = zero;
-				segments[size++] = 0f;
+				softSegments[size++] = s;
+				softSegments[size++] = mx[i] + s * softShadowLenght
+						* pointCos[i];
+				softSegments[size++] = my[i] + s * softShadowLenght
+						* pointSin[i];
+				softSegments[size++] = zero;
+				softSegments[size++] = 0f;
 			}
-			softShadowMesh.setVertices(segments, 0, size);
+			softSize = size;
 		} else {
 			final float r = color.r * 255;
 			final float g = color.g * 255;
@@ -166,7 +458,7 @@ public abstract class PositionalLight extends Light {
 			segments[size++] = start.y;
 			segments[size++] = colorF;
 			// rays ending points.
-			for (int i = 0; i < rayNum; i++) {
+			for (int i = 0; i < pointNum; i++) {
 				segments[size++] = mx[i];
 				segments[size++] = my[i];
 				final float s = 1f - f[i];
@@ -176,28 +468,30 @@ public abstract class PositionalLight extends Light {
 								| ((int) (b * s) << 16) | ((int) (g * s) << 8)
 								| ((int) (r * s)) & 0xfeffffff);
 			}
-			lightMesh.setVertices(segments, 0, size);
+			lightSize = size;
 
 			if (!soft || xray)
 				return;
 
 			size = 0;
-			for (int i = 0; i < rayNum; i++) {
-				segments[size++] = mx[i];
-				segments[size++] = my[i];
+			for (int i = 0; i < pointNum; i++) {
+				softSegments[size++] = mx[i];
+				softSegments[size++] = my[i];
 				// color value is cached.
 				final float s = 1f - f[i];
 				// ugly inlining
-				segments[size++] = Float
+				softSegments[size++] = Float
 						.intBitsToFloat(((int) (a * s) << 24)
 								| ((int) (b * s) << 16) | ((int) (g * s) << 8)
 								| ((int) (r * s)) & 0xfeffffff);
 
-				segments[size++] = mx[i] + s * softShadowLenght * cos[i];
-				segments[size++] = my[i] + s * softShadowLenght * sin[i];
-				segments[size++] = zero;
+				softSegments[size++] = mx[i] + s * softShadowLenght
+						* pointCos[i];
+				softSegments[size++] = my[i] + s * softShadowLenght
+						* pointSin[i];
+				softSegments[size++] = zero;
 			}
-			softShadowMesh.setVertices(segments, 0, size);
+			softSize = size;
 		}
 
 	}
@@ -210,20 +504,30 @@ public abstract class PositionalLight extends Light {
 		rayHandler.lightRenderedLastFrame++;
 		if (rayHandler.isGL20) {
 			lightMesh.render(rayHandler.lightShader, GL20.GL_TRIANGLE_FAN, 0,
-					vertexNum);
+					pointNum + 1);
 			if (soft && !xray) {
 				softShadowMesh.render(rayHandler.lightShader,
-						GL20.GL_TRIANGLE_STRIP, 0, (vertexNum - 1) * 2);
+						GL20.GL_TRIANGLE_STRIP, 0, pointNum * 2);
 			}
 		} else {
-			lightMesh.render(GL10.GL_TRIANGLE_FAN, 0, vertexNum);
+			lightMesh.render(GL10.GL_TRIANGLE_FAN, 0, pointNum + 1);
 			if (soft && !xray) {
 				softShadowMesh.render(GL10.GL_TRIANGLE_STRIP, 0,
-						(vertexNum - 1) * 2);
+						pointNum * 2);
 			}
 		}
 	}
 
+	@Override
+	void render(LightBatch batch) {
+		if (rayHandler.culling && culled)
+			return;
+
+		rayHandler.lightRenderedLastFrame++;
+		batch.addFan(segments, lightSize);
+		batch.addStrip(softSegments, softSize);
+	}
+
 	PositionalLight(RayHandler rayHandler, int rays, Color color,
 			float distance, float x, float y, float directionDegree) {
 		super(rayHandler, rays, color, directionDegree, distance);
@@ -233,26 +537,41 @@ public abstract class PositionalLight extends Light {
 		cos = new float[rays];
 		endX = new float[rays];
 		endY = new float[rays];
+		activeRays = rayNum;
+		pointNum = rayNum;
+		pointCos = cos;
+		pointSin = sin;
+		softSegments = new float[rayNum * 8];
+
+		createMeshes(vertexNum);
+		setMesh();
+	}
+
+	private void createMeshes(int vertices) {
+		if (lightMesh != null) {
+			lightMesh.dispose();
+			softShadowMesh.dispose();
+		}
+		meshVertices = vertices;
 
 		if (rayHandler.isGL20) {
-			lightMesh = new Mesh(staticLight, vertexNum, 0,
+			lightMesh = new Mesh(staticLight, vertices, 0,
 					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
 					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
 					new VertexAttribute(Usage.Generic, 1, "s"));
-			softShadowMesh = new Mesh(staticLight, vertexNum * 2, 0,
+			softShadowMesh = new Mesh(staticLight, vertices * 2, 0,
 					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
 					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
 					new VertexAttribute(Usage.Generic, 1, "s"));
 
 		} else {
-			lightMesh = new Mesh(staticLight, vertexNum, 0,
+			lightMesh = new Mesh(staticLight, vertices, 0,
 					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
 					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"));
-			softShadowMesh = new Mesh(staticLight, vertexNum * 2, 0,
+			softShadowMesh = new Mesh(staticLight, vertices * 2, 0,
 					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
 					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"));
 		}
-		setMesh();
 	}
 
 	@Override
@@ -268,10 +587,10 @@ public abstract class PositionalLight extends Light {
 		// actual check
 
 		boolean oddNodes = false;
-		float x2 = mx[rayNum] = start.x;
-		float y2 = my[rayNum] = start.y;
+		float x2 = mx[pointNum] = start.x;
+		float y2 = my[pointNum] = start.y;
 		float x1, y1;
-		for (int i = 0; i <= rayNum; x2 = x1, y2 = y1, ++i) {
+		for (int i = 0; i <= pointNum; x2 = x1, y2 = y1, ++i) {
 			x1 = mx[i];
 			y1 = my[i];
 			if (((y1 < y) && (y2 >= y))
@@ -17,6 +17,7 @@ import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
@@ -34,6 +35,28 @@ public class RayHandler implements Disposable {
 	World world;
 	ShaderProgram lightShader;
 
+	/** edges positional lights are built from analytically, null to raycast */
+	StaticOccluders occluders;
+	final static float OCCLUDERS_CELL_SIZE = 8f;
+
+	/** runs compute() of the lights, null to update them one by one */
+	private LightExecutor executor;
+	private int parallelMinLights;
+	private final Array<Light> pending = new Array<Light>(false, 16);
+	private final Array<LightPartition> partitions = new Array<LightPartition>();
+
+	/** rays all the positional lights may cast per update, 0 for no limit */
+	private int rayBudget = 0;
+	/** a light this wide compared to the view gets all its rays */
+	final static float LOD_FULL_DETAIL = 0.25f;
+	private float lodDesired[] = new float[16];
+	private float lodWeight[] = new float[16];
+
+	/** positional lights are drawn together on gles2.0 */
+	boolean batching = true;
+	private LightBatch lightBatch;
+	final static int BATCH_VERTICES = 8192;
+
 	/** gles1.0 shadows mesh */
 	private Mesh box;
 
@@ -64,6 +87,18 @@ public class RayHandler implements Disposable {
 	/** how many lights passed culling and rendered to scene */
 	public int lightRenderedLastFrame = 0;
 
+	/**
+	 * how many positional lights reused their mesh in the last update because
+	 * neither they nor anything around them changed
+	 */
+	public int lightSkippedLastFrame = 0;
+
+	/**
+	 * how many rays the positional lights were given in the last update, static
+	 * ones included, only counted with a ray budget
+	 */
+	public int raysLastFrame = 0;
+
 	/**
 	 * Construct handler that manages everything related to updating and
 	 * rendering the lights MINIMUM parameters needed are world where collision
@@ -109,6 +144,7 @@ public class RayHandler implements Disposable {
 
 			lightMap = new LightMap(this, fboWidth, fboHeigth);
 			lightShader = LightShader.createLightShader();
+			lightBatch = new LightBatch(BATCH_VERTICES);
 
 		} else {
 			setGammaCorrection(false);
@@ -218,11 +254,169 @@ public class RayHandler implements Disposable {
 	 * steps than rendering steps.
 	 */
 	public final void update() {
+		lightSkippedLastFrame = 0;
+		if (rayBudget > 0)
+			assignRays();
+
 		final int size = lightList.size;
+		if (executor == null || size < parallelMinLights) {
+			for (int j = 0; j < size; j++) {
+				lightList.get(j).update();
+			}
+			return;
+		}
+
+		// the world is only queried here, the lights take a snapshot of it
+		pending.clear();
 		for (int j = 0; j < size; j++) {
-			lightList.get(j).update();
+			final Light light = lightList.get(j);
+			if (light.prepare(true))
+				pending.add(light);
 		}
 
+		final int num = partitions.size;
+		for (int i = 0; i < num; i++) {
+			final LightPartition partition = partitions.get(i);
+			partition.from = pending.size * i / num;
+			partition.to = pending.size * (i + 1) / num;
+		}
+		executor.invokeAll(partitions);
+
+		for (int j = 0; j < pending.size; j++) {
+			pending.get(j).upload();
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Picks the number of rays of every positional light from its size in the
+	 * view. Static lights keep all their rays and every light keeps the
+	 * minimum, when the rest does not fit in the budget lights closer to the
+	 * centre of the view get a bigger share. Uses the positions of the last
+	 * update.
+	 */
+	private void assignRays() {
+		final int size = lightList.size;
+		if (lodDesired.length < size) {
+			lodDesired = new float[size * 2];
+			lodWeight = new float[size * 2];
+		}
+
+		final float viewWidth = x2 - x1;
+		final float viewHeight = y2 - y1;
+		final float centreX = (x1 + x2) * 0.5f;
+		final float centreY = (y1 + y2) * 0.5f;
+		final float halfDiagonal = 0.5f * (float) Math.sqrt(viewWidth
+				* viewWidth + viewHeight * viewHeight);
+
+		float desiredSum = 0f;
+		float weightSum = 0f;
+		int available = rayBudget;
+		raysLastFrame = 0;
+		for (int i = 0; i < size; i++) {
+			final Light light = lightList.get(i);
+			lodDesired[i] = -1f;
+			if (!(light instanceof PositionalLight))
+				continue;
+			if (light.staticLight) {
+				((PositionalLight) light).setActiveRays(light.rayNum);
+				available -= light.rayNum;
+				raysLastFrame += light.rayNum;
+				continue;
+			}
+
+			final float x = light.getX();
+			final float y = light.getY();
+			float detail = 1f;
+			float falloff = 0f;
+			if (viewWidth > 0f) {
+				if (intersect(x, y, light.distance))
+					detail = Math.min(1f, 2f * light.distance
+							/ (viewWidth * LOD_FULL_DETAIL));
+				else
+					detail = 0f;
+				final float dx = x - centreX;
+				final float dy = y - centreY;
+				falloff = (float) Math.sqrt(dx * dx + dy * dy) / halfDiagonal;
+			}
+
+			// rays wanted above the minimum
+			final float desired = (light.rayNum - Light.MIN_RAYS) * detail;
+			available -= Light.MIN_RAYS;
+			lodDesired[i] = desired;
+			lodWeight[i] = desired / (1f + falloff);
+			desiredSum += desired;
+			weightSum += lodWeight[i];
+		}
+
+		final float share = desiredSum > available ? Math.max(available, 0)
+				/ weightSum : Float.POSITIVE_INFINITY;
+		for (int i = 0; i < size; i++) {
+			if (lodDesired[i] < 0f)
+				continue;
+
+			// rays given above the minimum, the sum stays within available
+			lodDesired[i] = (int) Math.min(lodDesired[i], lodWeight[i] * share);
+			available -= lodDesired[i];
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (lodDesired[i] < 0f)
+				continue;
+
+			final PositionalLight light = (PositionalLight) lightList.get(i);
+			int rays = Light.MIN_RAYS + (int) lodDesired[i];
+			// small changes would rebuild lights that could reuse their mesh,
+			// a light only keeps more rays than it was given if the budget
+			// has room for them
+			if (rays < light.rayNum
+					&& Math.abs(rays - light.activeRays) * 8 <= light.activeRays) {
+				final int extra = light.activeRays - rays;
+				if (extra <= 0 || extra <= available) {
+					rays = light.activeRays;
+					available -= Math.max(extra, 0);
+				}
+			}
+			light.setActiveRays(rays);
+			raysLastFrame += light.activeRays;
+		}
+	}
+
+	private class LightPartition implements Runnable {
+		int from = 0;
+		int to = 0;
+
+		@Override
+		public void run() {
+			for (int j = from; j < to; j++) {
+				pending.get(j).compute();
+			}
+		}
+	}
+
+	/**
+	 * Updates the lights in parallel: the world is queried and the meshes are
+	 * uploaded on the calling thread, shadows and vertices are computed on the
+	 * workers of the executor against a copy of the fixtures around each light.
+	 * Directional lights are still updated on the calling thread.
+	 * 
+	 * Default = null, every light is updated on the calling thread
+	 * 
+	 * @param executor
+	 *            null to go back to serial updates
+	 * @param minLights
+	 *            below this many enabled lights the update stays serial
+	 */
+	public final void setExecutor(LightExecutor executor, int minLights) {
+		this.executor = executor;
+		parallelMinLights = minLights;
+		partitions.clear();
+		if (executor == null)
+			return;
+
+		for (int i = 0; i <= executor.getParallelism(); i++) {
+			partitions.add(new LightPartition());
+		}
 	}
 
 	/**
@@ -285,8 +479,16 @@ public class RayHandler implements Disposable {
 		{
 			lightShader.setUniformMatrix("u_projTrans", combined);
 
-			for (int i = 0, size = lightList.size; i < size; i++) {
-				lightList.get(i).render();
+			if (batching) {
+				lightBatch.begin(lightShader);
+				for (int i = 0, size = lightList.size; i < size; i++) {
+					lightList.get(i).render(lightBatch);
+				}
+				lightBatch.end();
+			} else {
+				for (int i = 0, size = lightList.size; i < size; i++) {
+					lightList.get(i).render();
+				}
 			}
 		}
 		lightShader.end();
@@ -355,6 +557,8 @@ public class RayHandler implements Disposable {
 			lightMap.dispose();
 		if (lightShader != null)
 			lightShader.dispose();
+		if (lightBatch != null)
+			lightBatch.dispose();
 	}
 
 	public void removeAll() {
@@ -489,6 +693,88 @@ public class RayHandler implements Disposable {
 		this.world = world;
 	}
 
+	/**
+	 * Bodies that never move, their edges are extracted once and positional
+	 * lights build their shape from them with an angular sweep. Raycasts are
+	 * only used for the other bodies around each light, xray lights and
+	 * directional lights are not affected. Static lights are updated.
+	 * 
+	 * The bodies must not be destroyed while set, pass null to go back to
+	 * raycasting everything.
+	 * 
+	 * @param bodies
+	 */
+	public final void setStaticBodies(Array<Body> bodies) {
+		if (bodies == null) {
+			occluders = null;
+		} else {
+			if (occluders == null)
+				occluders = new StaticOccluders(OCCLUDERS_CELL_SIZE);
+			occluders.set(bodies);
+		}
+
+		setLightsDirty();
+	}
+
+	/**
+	 * Limits the rays all positional lights cast per update. Every update each
+	 * light is given a number of rays between 3 and the number it was created
+	 * with, depending on how big it is in the view, and lights closer to the
+	 * centre of the view are preferred when the budget runs short. Lights
+	 * outside of the view get the minimum. Static lights keep all their rays
+	 * and count against the budget. Only when the static lights and the
+	 * minimum of the others do not fit is it exceeded.
+	 * 
+	 * Default = 0, every light casts all its rays
+	 * 
+	 * @param rays
+	 *            0 for no limit
+	 */
+	public final void setRayBudget(int rays) {
+		rayBudget = Math.max(rays, 0);
+		if (rayBudget > 0)
+			return;
+
+		for (int i = 0; i < lightList.size; i++) {
+			if (lightList.get(i) instanceof PositionalLight)
+				((PositionalLight) lightList.get(i))
+						.setActiveRays(Integer.MAX_VALUE);
+		}
+		for (int i = 0; i < disabledLights.size; i++) {
+			if (disabledLights.get(i) instanceof PositionalLight)
+				((PositionalLight) disabledLights.get(i))
+						.setActiveRays(Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * Disables/enables drawing all the positional lights with one call on
+	 * gles2.0. Their vertices are then not uploaded to their own meshes.
+	 * 
+	 * Default = true
+	 * 
+	 * @param batching
+	 */
+	public final void setBatching(boolean batching) {
+		if (batching == this.batching)
+			return;
+
+		this.batching = batching;
+		setLightsDirty();
+	}
+
+	/** rebuilds every light on its next update, static ones right away */
+	private void setLightsDirty() {
+		for (int i = 0; i < lightList.size; i++) {
+			lightList.get(i).dirty = true;
+			if (lightList.get(i).staticLight)
+				lightList.get(i).staticUpdate();
+		}
+		for (int i = 0; i < disabledLights.size; i++) {
+			disabledLights.get(i).dirty = true;
+		}
+	}
+
 	final static String HIGH = "highp";
 	final static String MED = "mediump";
 	final static String LOW = "lowp";
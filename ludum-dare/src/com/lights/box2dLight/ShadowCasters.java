@@ -0,0 +1,169 @@
+package com.lights.box2dLight;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.ChainShape;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.EdgeShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.physics.box2d.Transform;
+
+/**
+ * Copy of the fixtures around a light in world coordinates, taken on the
+ * thread that steps the world so the rays can be cast on another one. Box2D
+ * queries are not re-entrant.
+ *
+ * Rays behave like World.rayCast: polygons are only hit from outside, circles
+ * are not hit from a start inside them and edges are hit from both sides.
+ */
+final class ShadowCasters {
+
+	/** x1, y1, x2, y2 per segment */
+	private float segments[] = new float[64];
+	private boolean twoSided[] = new boolean[16];
+	private int segmentNum = 0;
+
+	/** x, y, radius per circle */
+	private float circles[] = new float[24];
+	private int circleNum = 0;
+
+	private final Vector2 tmp = new Vector2();
+	private final Vector2 last = new Vector2();
+
+	void clear() {
+		segmentNum = 0;
+		circleNum = 0;
+	}
+
+	/**
+	 * Adds the shape of the fixture where its body is now.
+	 */
+	void add(Fixture fixture) {
+		final Shape shape = fixture.getShape();
+		final Transform transform = fixture.getBody().getTransform();
+
+		switch (shape.getType()) {
+		case Polygon: {
+			final PolygonShape polygon = (PolygonShape) shape;
+			final int count = polygon.getVertexCount();
+			polygon.getVertex(count - 1, tmp);
+			last.set(transform.mul(tmp));
+			for (int i = 0; i < count; i++) {
+				polygon.getVertex(i, tmp);
+				transform.mul(tmp);
+				addSegment(last.x, last.y, tmp.x, tmp.y, false);
+				last.set(tmp);
+			}
+			break;
+		}
+		case Chain: {
+			final ChainShape chain = (ChainShape) shape;
+			chain.getVertex(0, tmp);
+			last.set(transform.mul(tmp));
+			for (int i = 1; i < chain.getVertexCount(); i++) {
+				chain.getVertex(i, tmp);
+				transform.mul(tmp);
+				addSegment(last.x, last.y, tmp.x, tmp.y, true);
+				last.set(tmp);
+			}
+			break;
+		}
+		case Edge: {
+			final EdgeShape edge = (EdgeShape) shape;
+			edge.getVertex1(tmp);
+			edge.getVertex2(last);
+			transform.mul(tmp);
+			transform.mul(last);
+			addSegment(tmp.x, tmp.y, last.x, last.y, true);
+			break;
+		}
+		case Circle: {
+			final CircleShape circle = (CircleShape) shape;
+			transform.mul(tmp.set(circle.getPosition()));
+			if (circles.length < (circleNum + 1) * 3) {
+				float newCircles[] = new float[circles.length * 2];
+				System.arraycopy(circles, 0, newCircles, 0, circleNum * 3);
+				circles = newCircles;
+			}
+			final int i = circleNum++ * 3;
+			circles[i] = tmp.x;
+			circles[i + 1] = tmp.y;
+			circles[i + 2] = circle.getRadius();
+			break;
+		}
+		}
+	}
+
+	private void addSegment(float x1, float y1, float x2, float y2,
+			boolean bothSides) {
+		if (twoSided.length <= segmentNum) {
+			float newSegments[] = new float[segments.length * 2];
+			System.arraycopy(segments, 0, newSegments, 0, segmentNum * 4);
+			segments = newSegments;
+			boolean newTwoSided[] = new boolean[twoSided.length * 2];
+			System.arraycopy(twoSided, 0, newTwoSided, 0, segmentNum);
+			twoSided = newTwoSided;
+		}
+		final int i = segmentNum * 4;
+		segments[i] = x1;
+		segments[i + 1] = y1;
+		segments[i + 2] = x2;
+		segments[i + 3] = y2;
+		twoSided[segmentNum++] = bothSides;
+	}
+
+	/**
+	 * Only reads, any number of threads can cast against the same snapshot.
+	 *
+	 * @return fraction of the ray from (x1, y1) to (x2, y2) at the closest
+	 *         hit, 1 if nothing is hit
+	 */
+	float cast(float x1, float y1, float x2, float y2) {
+		final float dx = x2 - x1;
+		final float dy = y2 - y1;
+		float best = 1f;
+
+		for (int s = 0; s < segmentNum; s++) {
+			final int i = s * 4;
+			final float ex = segments[i + 2] - segments[i];
+			final float ey = segments[i + 3] - segments[i + 1];
+			final float denom = dx * ey - dy * ex;
+			// counter clockwise polygons are entered when crossing right to
+			// left
+			if (denom == 0f || (denom > 0f && !twoSided[s]))
+				continue;
+
+			final float qx = segments[i] - x1;
+			final float qy = segments[i + 1] - y1;
+			final float t = (qx * ey - qy * ex) / denom;
+			if (t < 0f || t > best)
+				continue;
+			final float u = (qx * dy - qy * dx) / denom;
+			if (u < 0f || u > 1f)
+				continue;
+			best = t;
+		}
+
+		final float rr = dx * dx + dy * dy;
+		if (rr == 0f)
+			return best;
+
+		for (int c = 0; c < circleNum; c++) {
+			final int i = c * 3;
+			final float sx = x1 - circles[i];
+			final float sy = y1 - circles[i + 1];
+			final float radius = circles[i + 2];
+			final float b = sx * sx + sy * sy - radius * radius;
+			final float k = sx * dx + sy * dy;
+			final float sigma = k * k - rr * b;
+			if (sigma < 0f)
+				continue;
+
+			final float a = -(k + (float) Math.sqrt(sigma));
+			if (0f <= a && a <= best * rr)
+				best = a / rr;
+		}
+		return best;
+	}
+}
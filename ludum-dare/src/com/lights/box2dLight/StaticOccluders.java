@@ -0,0 +1,267 @@
+package com.lights.box2dLight;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.ChainShape;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.EdgeShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.physics.box2d.Transform;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IdentityMap;
+
+/**
+ * Edges of bodies that never move, extracted once and bucketed in a uniform
+ * grid so positional lights can build their visibility polygon analytically
+ * instead of raycasting them every frame.
+ *
+ * Fixtures of the given bodies are turned into segments in world coordinates,
+ * circles are approximated with CIRCLE_SEGMENTS edges. Contact filters are not
+ * applied to these edges. Once built the set is only read, so any number of
+ * lights can query it at the same time.
+ */
+public class StaticOccluders {
+
+	final static int CIRCLE_SEGMENTS = 16;
+
+	private final float cellSize;
+	private final IdentityMap<Body, Body> bodies = new IdentityMap<Body, Body>();
+
+	/** x1, y1, x2, y2 per segment */
+	float segments[] = new float[64];
+	int segmentNum = 0;
+
+	private float minX, minY;
+	private int width, height;
+	private int cellStart[] = new int[2];
+	private int items[] = new int[0];
+
+	private final Vector2 tmp = new Vector2();
+	private final Vector2 first = new Vector2();
+	private final Vector2 last = new Vector2();
+
+	/**
+	 * @param cellSize
+	 *            side of a grid cell in world units, around the usual light
+	 *            distance
+	 */
+	public StaticOccluders(float cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Replaces the occluders with the edges of every fixture of the given
+	 * bodies, they must not move afterwards.
+	 *
+	 * @param bodies
+	 */
+	public void set(Array<Body> bodies) {
+		this.bodies.clear();
+		segmentNum = 0;
+
+		for (int i = 0; i < bodies.size; i++) {
+			Body body = bodies.get(i);
+			this.bodies.put(body, body);
+			Transform transform = body.getTransform();
+			ArrayList<Fixture> fixtures = body.getFixtureList();
+
+			for (int j = 0; j < fixtures.size(); j++) {
+				addShape(fixtures.get(j).getShape(), transform);
+			}
+		}
+
+		build();
+	}
+
+	/**
+	 * Adds a single segment in world coordinates, call build() once done.
+	 */
+	public void addSegment(float x1, float y1, float x2, float y2) {
+		if (x1 == x2 && y1 == y2)
+			return;
+
+		if (segments.length < (segmentNum + 1) * 4) {
+			float newSegments[] = new float[segments.length * 2];
+			System.arraycopy(segments, 0, newSegments, 0, segmentNum * 4);
+			segments = newSegments;
+		}
+
+		int i = segmentNum++ * 4;
+		segments[i] = x1;
+		segments[i + 1] = y1;
+		segments[i + 2] = x2;
+		segments[i + 3] = y2;
+	}
+
+	public void clear() {
+		bodies.clear();
+		segmentNum = 0;
+		build();
+	}
+
+	/**
+	 * @return whether the edges of this body are part of the set
+	 */
+	public boolean contains(Body body) {
+		return bodies.containsKey(body);
+	}
+
+	public int getSegmentCount() {
+		return segmentNum;
+	}
+
+	/**
+	 * Buckets the segments added so far, every segment goes to all the cells
+	 * its bounding box overlaps.
+	 */
+	public void build() {
+		if (segmentNum == 0) {
+			width = height = 1;
+			minX = minY = 0;
+			cellStart = new int[2];
+			return;
+		}
+
+		float maxX, maxY;
+		minX = maxX = segments[0];
+		minY = maxY = segments[1];
+
+		for (int i = 0; i < segmentNum * 4; i += 2) {
+			minX = Math.min(minX, segments[i]);
+			maxX = Math.max(maxX, segments[i]);
+			minY = Math.min(minY, segments[i + 1]);
+			maxY = Math.max(maxY, segments[i + 1]);
+		}
+
+		width = (int) ((maxX - minX) / cellSize) + 1;
+		height = (int) ((maxY - minY) / cellSize) + 1;
+		cellStart = new int[width * height + 1];
+
+		// count, prefix sum and scatter
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < segmentNum; i++) {
+				int j = i * 4;
+				int x1 = getCellX(Math.min(segments[j], segments[j + 2]));
+				int x2 = getCellX(Math.max(segments[j], segments[j + 2]));
+				int y1 = getCellY(Math.min(segments[j + 1], segments[j + 3]));
+				int y2 = getCellY(Math.max(segments[j + 1], segments[j + 3]));
+
+				for (int y = y1; y <= y2; y++) {
+					for (int x = x1; x <= x2; x++) {
+						int cell = x + y * width;
+						if (pass == 0)
+							cellStart[cell + 1]++;
+						else
+							items[cellStart[cell]++] = i;
+					}
+				}
+			}
+
+			if (pass == 0) {
+				for (int i = 0; i < width * height; i++) {
+					cellStart[i + 1] += cellStart[i];
+				}
+				if (items.length < cellStart[width * height])
+					items = new int[cellStart[width * height]];
+			}
+		}
+
+		// scattering moved every start to the next cell's
+		for (int i = width * height; i > 0; i--) {
+			cellStart[i] = cellStart[i - 1];
+		}
+		cellStart[0] = 0;
+	}
+
+	/**
+	 * Fills result with the index of every segment in the cells overlapping the
+	 * square around (x, y), a segment can be reported more than once.
+	 * 
+	 * @return number of indices found, only the ones that fit are written
+	 */
+	final int query(float x, float y, float radius, int result[]) {
+		int num = 0;
+		int x1 = getCellX(x - radius);
+		int x2 = getCellX(x + radius);
+		int y1 = getCellY(y - radius);
+		int y2 = getCellY(y + radius);
+
+		for (int cy = y1; cy <= y2; cy++) {
+			for (int cx = x1; cx <= x2; cx++) {
+				int cell = cx + cy * width;
+				for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+					if (num < result.length)
+						result[num] = items[i];
+					num++;
+				}
+			}
+		}
+		return num;
+	}
+
+	private void addShape(Shape shape, Transform transform) {
+		switch (shape.getType()) {
+		case Polygon: {
+			PolygonShape polygon = (PolygonShape) shape;
+			int count = polygon.getVertexCount();
+			polygon.getVertex(count - 1, tmp);
+			last.set(transform.mul(tmp));
+			for (int i = 0; i < count; i++) {
+				polygon.getVertex(i, tmp);
+				transform.mul(tmp);
+				addSegment(last.x, last.y, tmp.x, tmp.y);
+				last.set(tmp);
+			}
+			break;
+		}
+		case Chain: {
+			ChainShape chain = (ChainShape) shape;
+			chain.getVertex(0, tmp);
+			last.set(transform.mul(tmp));
+			for (int i = 1; i < chain.getVertexCount(); i++) {
+				chain.getVertex(i, tmp);
+				transform.mul(tmp);
+				addSegment(last.x, last.y, tmp.x, tmp.y);
+				last.set(tmp);
+			}
+			break;
+		}
+		case Edge: {
+			EdgeShape edge = (EdgeShape) shape;
+			edge.getVertex1(first);
+			edge.getVertex2(last);
+			transform.mul(first);
+			transform.mul(last);
+			addSegment(first.x, first.y, last.x, last.y);
+			break;
+		}
+		case Circle: {
+			CircleShape circle = (CircleShape) shape;
+			float radius = circle.getRadius();
+			first.set(transform.mul(tmp.set(circle.getPosition())));
+			last.set(first.x + radius, first.y);
+			for (int i = 1; i <= CIRCLE_SEGMENTS; i++) {
+				float angle = MathUtils.PI2 * i / CIRCLE_SEGMENTS;
+				float x = first.x + radius * (float) Math.cos(angle);
+				float y = first.y + radius * (float) Math.sin(angle);
+				addSegment(last.x, last.y, x, y);
+				last.set(x, y);
+			}
+			break;
+		}
+		}
+	}
+
+	private int getCellX(float x) {
+		return Math.min(Math.max((int) ((x - minX) / cellSize), 0), width - 1);
+	}
+
+	private int getCellY(float y) {
+		return Math.min(Math.max((int) ((y - minY) / cellSize), 0), height - 1);
+	}
+}
@@ -0,0 +1,486 @@
+package com.lights.box2dLight;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Visibility polygon of a positional light against StaticOccluders, built with
+ * an angular sweep instead of casting every ray.
+ *
+ * Occluder segments around the light are clipped to its circle and their
+ * endpoints sorted by angle. Between two consecutive endpoints the closest
+ * segment does not change unless it crosses another one, overlapping shapes
+ * do, so crossings with it are treated as one more endpoint. The polygon gets
+ * vertices right at the corners, before and after each one, and the light's
+ * ray directions are only used to tessellate the parts where the circle itself
+ * is the boundary. The cost is O(E log E) for E nearby segments plus the depth
+ * of the scene at each endpoint, rays hitting walls do not cost anything.
+ *
+ * Angular intervals can be marked as dense, every ray direction inside them is
+ * kept so dynamic bodies there can still be raycast with the usual resolution.
+ *
+ * Each light owns its sweep, the output arrays are overwritten by compute().
+ */
+final class VisibilitySweep {
+
+	static final float EPSILON = 0.0001f;
+
+	private float px, py, radius;
+	private double startAngle;
+	private float range;
+
+	/** x1, y1, x2, y2 relative to the light, counter clockwise around it */
+	private float segments[] = new float[64];
+	private int segmentNum;
+	private int query[] = new int[64];
+	private int mark[] = new int[0];
+	private int stamp = 0;
+
+	/** angle bits << 32 | segment << 1 | end */
+	private long events[] = new long[32];
+	private int eventNum;
+	private int active[] = new int[16];
+	private int activePos[] = new int[16];
+	private int activeNum;
+	private float stop;
+
+	private float denseStart[] = new float[4];
+	private float denseEnd[] = new float[4];
+	private float denseNear[] = new float[4];
+	private int denseNum;
+
+	/** number of polygon points, not counting the light position */
+	int num;
+	/** angle of each point from the start of the range */
+	float t[] = new float[0];
+	float x[] = new float[0];
+	float y[] = new float[0];
+	/** distance to each point over the light distance */
+	float fraction[] = new float[0];
+	float cos[] = new float[0];
+	float sin[] = new float[0];
+	/**
+	 * closest distance a dense interval may have something in front of each
+	 * point, infinity when there is none
+	 */
+	float near[] = new float[0];
+
+	/**
+	 * Starts a new polygon, dense directions have to be added before computing
+	 * it.
+	 * 
+	 * @param startDegree
+	 *            direction the range starts at
+	 * @param rangeDegree
+	 *            counter clockwise span of the light, 360 for a full circle
+	 */
+	void begin(float x, float y, float distance, float startDegree,
+			float rangeDegree) {
+		px = x;
+		py = y;
+		radius = distance;
+		startAngle = startDegree * MathUtils.degreesToRadians;
+		range = Math.min(rangeDegree * MathUtils.degreesToRadians, MathUtils.PI2);
+		denseNum = 0;
+	}
+
+	/**
+	 * Marks the directions covered by a circle where something may be in front
+	 * of the occluders, the whole range when the light is inside it.
+	 */
+	void addDense(float x, float y, float r) {
+		final float dx = x - px;
+		final float dy = y - py;
+		final float d = (float) Math.sqrt(dx * dx + dy * dy);
+		if (d <= r) {
+			addInterval(0f, range, 0f);
+			return;
+		}
+
+		final float half = (float) Math.asin(r / d);
+		final float centre = getAngle(dx, dy);
+		final float start = centre - half;
+		final float end = centre + half;
+		if (start < 0f) {
+			addInterval(start + MathUtils.PI2, MathUtils.PI2, d - r);
+			addInterval(0f, end, d - r);
+		} else if (end > MathUtils.PI2) {
+			addInterval(start, MathUtils.PI2, d - r);
+			addInterval(0f, end - MathUtils.PI2, d - r);
+		} else {
+			addInterval(start, end, d - r);
+		}
+	}
+
+	private void addInterval(float start, float end, float near) {
+		if (denseNum == denseStart.length) {
+			denseStart = grow(denseStart, denseNum * 2);
+			denseEnd = grow(denseEnd, denseNum * 2);
+			denseNear = grow(denseNear, denseNum * 2);
+		}
+		denseStart[denseNum] = start;
+		denseEnd[denseNum] = end;
+		denseNear[denseNum] = near;
+		denseNum++;
+	}
+
+	/**
+	 * @param rays
+	 *            ray directions spread evenly over the range, at least 2
+	 * @return number of polygon points
+	 */
+	int compute(StaticOccluders occluders, int rays) {
+		num = 0;
+		segmentNum = 0;
+		eventNum = 0;
+		activeNum = 0;
+
+		gather(occluders);
+		ensureCapacity(rays + eventNum * 2 + 2);
+		Arrays.sort(events, 0, eventNum);
+
+		final float step = range / (rays - 1);
+		int e = 0;
+		int s = 1;
+
+		while (e < eventNum && getEventAngle(e) <= 0f)
+			apply(events[e++]);
+
+		float angle = 0f;
+		int front = findFront(angle, getNextAngle(e));
+		emit(angle, getHit(front, angle));
+
+		while (true) {
+			final float next = stop;
+
+			// ray directions only matter where the circle is the boundary
+			for (; s < rays - 1 && s * step < next; s++) {
+				final float rayAngle = s * step;
+				final float d = getHit(front, rayAngle);
+				if (front == -1 || getNear(rayAngle, step) < d)
+					emit(rayAngle, d);
+			}
+
+			if (next >= range)
+				break;
+
+			angle = next;
+			final float before = getHit(front, angle);
+			while (e < eventNum && getEventAngle(e) == angle)
+				apply(events[e++]);
+			while (s < rays - 1 && s * step <= angle)
+				s++;
+
+			front = findFront(angle, getNextAngle(e));
+			final float after = getHit(front, angle);
+			emit(angle, before);
+			if (Math.abs(after - before) > EPSILON)
+				emit(angle, after);
+		}
+
+		emit(range, getHit(front, range));
+		return num;
+	}
+
+	private void gather(StaticOccluders occluders) {
+		int found = occluders.query(px, py, radius, query);
+		if (found > query.length) {
+			query = new int[found * 2];
+			occluders.query(px, py, radius, query);
+		}
+
+		if (mark.length < occluders.segmentNum)
+			mark = new int[occluders.segmentNum * 2];
+		stamp++;
+
+		final float occluderSegments[] = occluders.segments;
+		for (int i = 0; i < found; i++) {
+			final int segment = query[i];
+			if (mark[segment] == stamp)
+				continue;
+			mark[segment] = stamp;
+			addSegment(occluderSegments, segment * 4);
+		}
+	}
+
+	private void addSegment(float occluderSegments[], int offset) {
+		float x1 = occluderSegments[offset] - px;
+		float y1 = occluderSegments[offset + 1] - py;
+		float x2 = occluderSegments[offset + 2] - px;
+		float y2 = occluderSegments[offset + 3] - py;
+
+		// clip to the light circle
+		final float dx = x2 - x1;
+		final float dy = y2 - y1;
+		final float a = dx * dx + dy * dy;
+		final float b = x1 * dx + y1 * dy;
+		final float c = x1 * x1 + y1 * y1 - radius * radius;
+		final float discriminant = b * b - a * c;
+		if (discriminant <= 0f)
+			return;
+
+		final float root = (float) Math.sqrt(discriminant);
+		final float u1 = Math.max((-b - root) / a, 0f);
+		final float u2 = Math.min((-b + root) / a, 1f);
+		if (u1 >= u2)
+			return;
+
+		if (u2 < 1f) {
+			x2 = x1 + u2 * dx;
+			y2 = y1 + u2 * dy;
+		}
+		if (u1 > 0f) {
+			x1 += u1 * dx;
+			y1 += u1 * dy;
+		}
+
+		// edge on segments do not hide anything
+		final float cross = x1 * y2 - y1 * x2;
+		if (cross == 0f)
+			return;
+		if (cross < 0f) {
+			float tmp = x1;
+			x1 = x2;
+			x2 = tmp;
+			tmp = y1;
+			y1 = y2;
+			y2 = tmp;
+		}
+
+		final float start = getAngle(x1, y1);
+		final float end = getAngle(x2, y2);
+		final boolean wraps = start > end;
+		if (!wraps && start > range)
+			return;
+
+		if (segments.length < (segmentNum + 1) * 4) {
+			segments = grow(segments, segments.length * 2);
+			activePos = grow(activePos, segments.length / 4);
+		}
+		final int segment = segmentNum++;
+		final int i = segment * 4;
+		segments[i] = x1;
+		segments[i + 1] = y1;
+		segments[i + 2] = x2;
+		segments[i + 3] = y2;
+
+		// segments across the start of the range are already in front of it
+		if (wraps)
+			activate(segment);
+		if (start <= range)
+			addEvent(start, segment, 0);
+		if (end <= range)
+			addEvent(end, segment, 1);
+	}
+
+	private void addEvent(float angle, int segment, int end) {
+		if (eventNum == events.length) {
+			long newEvents[] = new long[eventNum * 2];
+			System.arraycopy(events, 0, newEvents, 0, eventNum);
+			events = newEvents;
+		}
+		events[eventNum++] = ((long) Float.floatToIntBits(angle) << 32)
+				| (segment << 1) | end;
+	}
+
+	private float getEventAngle(int e) {
+		return Float.intBitsToFloat((int) (events[e] >>> 32));
+	}
+
+	private float getNextAngle(int e) {
+		while (e < eventNum) {
+			final float angle = getEventAngle(e++);
+			if (angle > 0f)
+				return Math.min(angle, range);
+		}
+		return range;
+	}
+
+	private void apply(long event) {
+		final int segment = (int) event >>> 1;
+		if ((event & 1) == 0)
+			activate(segment);
+		else
+			deactivate(segment);
+	}
+
+	private void activate(int segment) {
+		if (activeNum == active.length)
+			active = grow(active, activeNum * 2);
+		activePos[segment] = activeNum;
+		active[activeNum++] = segment;
+	}
+
+	private void deactivate(int segment) {
+		final int pos = activePos[segment];
+		final int last = active[--activeNum];
+		active[pos] = last;
+		activePos[last] = pos;
+	}
+
+	/**
+	 * @return closest active segment from the first angle on, -1 if the circle
+	 *         is closer. It stays the closest one until stop.
+	 */
+	private int findFront(float from, float to) {
+		while (true) {
+			final int front = getFront(from, to);
+			final float crossing = getCrossing(front, from, to);
+			if (crossing >= to) {
+				stop = to;
+				return front;
+			}
+			to = crossing;
+		}
+	}
+
+	/**
+	 * @return first angle in (from, to) where an active segment crosses the
+	 *         given one, to if there is none
+	 */
+	private float getCrossing(int segment, float from, float to) {
+		if (segment == -1)
+			return to;
+
+		for (int i = 0; i < activeNum; i++) {
+			final int other = active[i];
+			if (other == segment)
+				continue;
+
+			// same order both ways so the crossing is found at the same angle
+			final int j = Math.min(segment, other) * 4;
+			final int k = Math.max(segment, other) * 4;
+			final float rx = segments[j + 2] - segments[j];
+			final float ry = segments[j + 3] - segments[j + 1];
+			final float sx = segments[k + 2] - segments[k];
+			final float sy = segments[k + 3] - segments[k + 1];
+			final float denominator = rx * sy - ry * sx;
+			if (denominator == 0f)
+				continue;
+
+			final float qx = segments[k] - segments[j];
+			final float qy = segments[k + 1] - segments[j + 1];
+			final float u = (qx * sy - qy * sx) / denominator;
+			final float v = (qx * ry - qy * rx) / denominator;
+			if (u <= 0f || u >= 1f || v <= 0f || v >= 1f)
+				continue;
+
+			final float angle = getAngle(segments[j] + u * rx, segments[j + 1] + u * ry);
+			if (from < angle && angle < to)
+				to = angle;
+		}
+		return to;
+	}
+
+	/**
+	 * @return closest active segment halfway between both angles, -1 if the
+	 *         circle is closer
+	 */
+	private int getFront(float from, float to) {
+		final double angle = startAngle + (from + to) * 0.5f;
+		final float c = (float) Math.cos(angle);
+		final float s = (float) Math.sin(angle);
+		float best = radius;
+		int front = -1;
+
+		for (int i = 0; i < activeNum; i++) {
+			final int segment = active[i];
+			final float d = getDistance(segment, c, s);
+			if (d < best) {
+				best = d;
+				front = segment;
+			}
+		}
+		return front;
+	}
+
+	private float getHit(int segment, float angle) {
+		if (segment == -1)
+			return radius;
+
+		final double direction = startAngle + angle;
+		final float d = getDistance(segment, (float) Math.cos(direction),
+				(float) Math.sin(direction));
+		return d < 0f ? 0f : d > radius ? radius : d;
+	}
+
+	private float getDistance(int segment, float c, float s) {
+		final int i = segment * 4;
+		final float x1 = segments[i];
+		final float y1 = segments[i + 1];
+		final float ex = segments[i + 2] - x1;
+		final float ey = segments[i + 3] - y1;
+		final float denominator = c * ey - s * ex;
+		if (denominator == 0f)
+			return Float.POSITIVE_INFINITY;
+		return (x1 * ey - y1 * ex) / denominator;
+	}
+
+	/**
+	 * @param margin
+	 *            widens the dense intervals, a ray on each side of them keeps
+	 *            the shadow edges where plain raycasting would put them
+	 */
+	private float getNear(float angle, float margin) {
+		float result = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < denseNum; i++) {
+			if (denseStart[i] - margin <= angle
+					&& angle <= denseEnd[i] + margin)
+				result = Math.min(result, denseNear[i]);
+		}
+		return result;
+	}
+
+	private void emit(float angle, float d) {
+		final double direction = startAngle + angle;
+		final float c = (float) Math.cos(direction);
+		final float s = (float) Math.sin(direction);
+		t[num] = angle;
+		cos[num] = c;
+		sin[num] = s;
+		x[num] = px + d * c;
+		y[num] = py + d * s;
+		fraction[num] = d / radius;
+		near[num] = getNear(angle, 0f);
+		num++;
+	}
+
+	/**
+	 * @return angle of the point relative to the light from the start of the
+	 *         range, in [0, 2PI)
+	 */
+	private float getAngle(float x, float y) {
+		float angle = (float) (Math.atan2(y, x) - startAngle);
+		while (angle < 0f)
+			angle += MathUtils.PI2;
+		while (angle >= MathUtils.PI2)
+			angle -= MathUtils.PI2;
+		return angle <= 0f ? 0f : angle;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (t.length >= capacity)
+			return;
+
+		t = new float[capacity];
+		x = new float[capacity];
+		y = new float[capacity];
+		fraction = new float[capacity];
+		cos = new float[capacity];
+		sin = new float[capacity];
+		near = new float[capacity];
+	}
+
+	private static float[] grow(float array[], int size) {
+		float newArray[] = new float[size];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private static int[] grow(int array[], int size) {
+		int newArray[] = new int[size];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+}
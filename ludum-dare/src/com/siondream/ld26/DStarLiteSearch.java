@@ -0,0 +1,284 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Incremental planner (D* Lite) for a requester chasing a moving destination.
+ *
+ * The search grows from the cell the requester was at when it was first asked, so
+ * costs from there stay valid while the destination moves and only the difference
+ * needs to be searched. The requester must keep walking the path it was given: a
+ * search starting from a cell off that path starts over from scratch.
+ *
+ * Same moves and costs as JumpPointSearch, paths are optimal.
+ */
+public class DStarLiteSearch implements PathSearch {
+	
+	private NavGrid grid;
+	private NodeHeap open;
+	private float[] g;
+	private float[] rhs;
+	private int[] visitedID;
+	private int searchID;
+	private int root;
+	private int origin;
+	private int destination;
+	private float km;
+	private int expanded;
+	private int restarts;
+	private IntArray cells;
+	private int next;
+	
+	public DStarLiteSearch(NavGrid grid) {
+		int numCells = grid.getNumCells();
+		
+		this.grid = grid;
+		open = new NodeHeap(numCells);
+		g = new float[numCells];
+		rhs = new float[numCells];
+		visitedID = new int[numCells];
+		searchID = 0;
+		root = -1;
+		origin = -1;
+		destination = -1;
+		km = 0.0f;
+		expanded = 0;
+		restarts = 0;
+		cells = new IntArray();
+		next = -1;
+	}
+	
+	/**
+	 * @return number of times the search could not reuse its state, for profiling
+	 */
+	public int getRestartCount() {
+		return restarts;
+	}
+	
+	@Override
+	public boolean search(int origin, int destination) {
+		start(origin, destination);
+		return resume(Integer.MAX_VALUE) == State.Found;
+	}
+	
+	@Override
+	public void start(int origin, int destination) {
+		this.origin = origin;
+		expanded = 0;
+		
+		if (root == -1 || (origin != root && !cells.contains(origin))) {
+			restart(origin, destination);
+			return;
+		}
+		
+		// The destination is the moving end of the search, keys already queued stay
+		// valid lower bounds by adding how far it moved
+		km += h(this.destination, destination);
+		this.destination = destination;
+	}
+	
+	@Override
+	public State resume(int maxExpansions) {
+		int expansions = 0;
+		
+		while (true) {
+			while (!open.isEmpty() && (isLower(open.peek(), destination) || getRhs(destination) > getG(destination))) {
+				if (expansions++ >= maxExpansions) {
+					return State.Searching;
+				}
+				
+				expand(open.peek());
+				++expanded;
+			}
+			
+			if (getRhs(destination) == Float.POSITIVE_INFINITY) {
+				cells.clear();
+				return State.NotFound;
+			}
+			
+			extractPath();
+			
+			// The requester is not on the new path, it would have to walk back to the root
+			if (origin == root || cells.contains(origin)) {
+				return State.Found;
+			}
+			
+			restart(origin, destination);
+		}
+	}
+	
+	@Override
+	public int getExpandedCount() {
+		return expanded;
+	}
+	
+	/**
+	 * There is one waypoint per cell, from the cell the search was started from
+	 */
+	@Override
+	public void getPath(Path path) {
+		path.clear();
+		
+		for (int i = cells.indexOf(origin); i < cells.size; ++i) {
+			int cell = cells.get(i);
+			path.add(grid.getCentreX(grid.getX(cell)), grid.getCentreY(grid.getY(cell)));
+		}
+	}
+	
+	@Override
+	public PathSearch copy() {
+		return new DStarLiteSearch(grid);
+	}
+	
+	private void restart(int origin, int destination) {
+		++searchID;
+		++restarts;
+		open.clear();
+		cells.clear();
+		km = 0.0f;
+		root = origin;
+		this.destination = destination;
+		
+		visit(root);
+		rhs[root] = 0.0f;
+		open.setValue(root, h(destination, root), 0.0f);
+	}
+	
+	private void expand(int cell) {
+		float oldKey = open.getValue(cell);
+		float oldTie = open.getTie(cell);
+		float tie = Math.min(getG(cell), getRhs(cell));
+		float key = tie + h(destination, cell) + km;
+		
+		if (oldKey < key || (oldKey == key && oldTie < tie)) {
+			open.setValue(cell, key, tie);
+		}
+		else if (getG(cell) > getRhs(cell)) {
+			g[cell] = rhs[cell];
+			open.remove(cell);
+			updateNeighbours(cell, false);
+		}
+		else {
+			// Only when costs go up, the grid never changes so it is here for completeness
+			g[cell] = Float.POSITIVE_INFINITY;
+			updateVertex(cell, true);
+			updateNeighbours(cell, true);
+		}
+	}
+	
+	private void updateNeighbours(int cell, boolean recompute) {
+		int mask = grid.getNeighbours(cell);
+		
+		for (int i = 0; mask != 0; ++i, mask >>= 1) {
+			if ((mask & 1) == 0) {
+				continue;
+			}
+			
+			int neighbour = cell + grid.getOffset(i);
+			visit(neighbour);
+			
+			// Cheaper than looking at all the neighbours when cell just got cheaper
+			if (!recompute && neighbour != root) {
+				rhs[neighbour] = Math.min(rhs[neighbour], g[cell] + 1.0f);
+			}
+			
+			updateVertex(neighbour, recompute);
+		}
+	}
+	
+	private void updateVertex(int cell, boolean recompute) {
+		visit(cell);
+		
+		if (recompute && cell != root) {
+			rhs[cell] = getBestNeighbour(cell, -1);
+		}
+		
+		if (g[cell] != rhs[cell]) {
+			float tie = Math.min(g[cell], rhs[cell]);
+			open.setValue(cell, tie + h(destination, cell) + km, tie);
+		}
+		else {
+			open.remove(cell);
+		}
+	}
+	
+	/**
+	 * @return lowest cost to reach cell through any of its neighbours, the neighbour
+	 * is kept in next, ties go to the one closest to towards unless it is -1
+	 */
+	private float getBestNeighbour(int cell, int towards) {
+		int mask = grid.getNeighbours(cell);
+		float best = Float.POSITIVE_INFINITY;
+		float bestDistance = Float.POSITIVE_INFINITY;
+		
+		for (int i = 0; mask != 0; ++i, mask >>= 1) {
+			if ((mask & 1) == 0) {
+				continue;
+			}
+			
+			int neighbour = cell + grid.getOffset(i);
+			float cost = getG(neighbour) + 1.0f;
+			
+			if (cost > best) {
+				continue;
+			}
+			
+			float distance = towards != -1? h(neighbour, towards) : 0.0f;
+			
+			if (cost < best || distance < bestDistance) {
+				best = cost;
+				bestDistance = distance;
+				next = neighbour;
+			}
+		}
+		
+		return best;
+	}
+	
+	private void extractPath() {
+		int cell = destination;
+		cells.clear();
+		cells.add(cell);
+		
+		// Ties lean towards the requester so the path goes through it whenever it can
+		while (cell != root && cells.size <= grid.getNumCells()) {
+			getBestNeighbour(cell, getG(cell) > getG(origin)? origin : -1);
+			cell = next;
+			cells.add(cell);
+		}
+		
+		cells.reverse();
+	}
+	
+	/**
+	 * @return whether the key of the queued cell is lower than the one cell would have
+	 */
+	private boolean isLower(int queued, int cell) {
+		float tie = Math.min(getG(cell), getRhs(cell));
+		float key = tie + h(destination, cell) + km;
+		float queuedKey = open.getValue(queued);
+		return queuedKey < key || (queuedKey == key && open.getTie(queued) < tie);
+	}
+	
+	private void visit(int cell) {
+		if (visitedID[cell] != searchID) {
+			visitedID[cell] = searchID;
+			g[cell] = Float.POSITIVE_INFINITY;
+			rhs[cell] = Float.POSITIVE_INFINITY;
+		}
+	}
+	
+	private float getG(int cell) {
+		return visitedID[cell] == searchID? g[cell] : Float.POSITIVE_INFINITY;
+	}
+	
+	private float getRhs(int cell) {
+		return visitedID[cell] == searchID? rhs[cell] : Float.POSITIVE_INFINITY;
+	}
+	
+	private float h(int from, int to) {
+		int x = Math.abs(grid.getX(from) - grid.getX(to));
+		int y = Math.abs(grid.getY(from) - grid.getY(to));
+		return Math.max(x, y);
+	}
+}
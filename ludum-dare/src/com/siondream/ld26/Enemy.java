@@ -12,54 +12,56 @@ import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.Transform;
 import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
-import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool.Poolable;
 import com.siondream.ld26.PathFinder.ResultCode;
+import com.siondream.ld26.Steering.Blender;
+import com.siondream.ld26.Steering.FollowFlowField;
 import com.siondream.ld26.Steering.FollowPath;
 import com.siondream.ld26.Steering.Seek;
 import com.siondream.ld26.Steering.Separation;
-import com.siondream.ld26.Steering.SteeringBehavior;
 import com.siondream.ld26.Steering.SteeringData;
 
-public class Enemy extends Entity implements PathFinder.Callback {
+public class Enemy extends Entity implements PathFinder.Callback, Poolable {
+	
+	// Behaviours in priority order
+	public static final int separationBehavior = 0;
+	public static final int followPathBehavior = 1;
+	public static final int followFlowFieldBehavior = 2;
+	public static final int seekBehavior = 3;
 	
 	private TextureRegion region;
 	private Body body;
-	private Vector2[] path;
-	private SteeringData steering;
-	private Array<SteeringBehavior> steeringBehaviors;
-	private Array<Float> steeringWeights;
+	private Path path;
+	private long pathRequest;
+	private Blender steering;
 	private float damage;
+	private float aiTime;
+	private int aiTicks;
 
 	public Enemy(WorldController controller) {
 		super(controller);
 
 		region = new TextureRegion(Assets.instance.get("data/enemy.png", Texture.class));
 		
-		steering = new SteeringData();
-		steeringBehaviors = new Array<SteeringBehavior>();
-		steeringWeights = new Array<Float>();
-		
-		FollowPath followPath = new FollowPath(this,
-											   Globals.enemyForce,
-											   Globals.enemyEndDistance,
-											   Globals.enemyPredictTime,
-											   Globals.enemyPathAngleThreshold);
-		
-		Separation separation = new Separation(this,
-											   Globals.enemySeparationCheckDistance,
-											   Globals.enemySeparationDecayCoefficient,
-											   Globals.enemyForce);
+		path = new Path();
+		pathRequest = 0;
+		steering = new Blender(Globals.enemyForce);
 		
-		Seek seek = new Seek(this, Globals.enemyForce);
+		steering.add(new Separation(this,
+									Globals.enemySeparationCheckDistance,
+									Globals.enemySeparationDecayCoefficient,
+									Globals.enemyForce),
+					 Globals.enemySeparationWeight);
 		
-		steeringBehaviors.add(followPath);
-		steeringWeights.add(Globals.enemyFollowPathWeight);
+		steering.add(new FollowPath(this,
+									Globals.enemyForce,
+									Globals.enemyEndDistance,
+									Globals.enemyPredictTime,
+									Globals.enemyPathAngleThreshold),
+					 Globals.enemyFollowPathWeight);
 		
-		steeringBehaviors.add(separation);
-		steeringWeights.add(Globals.enemySeparationWeight);
-		
-		steeringBehaviors.add(seek);
-		steeringWeights.add(0.0f);
+		steering.add(new FollowFlowField(this, Globals.enemyForce), 0.0f);
+		steering.add(new Seek(this, Globals.enemyForce), 0.0f);
 		
 		init();
 	}
@@ -89,11 +91,50 @@ public class Enemy extends Entity implements PathFinder.Callback {
 		shape.dispose();
 		
 		damage = Globals.enemyDamage;
+		
+		// Spreads throttled updates over different ticks
+		aiTime = 0.0f;
+		aiTicks = MathUtils.random(Globals.enemyLodFarInterval - 1);
+	}
+	
+	/**
+	 * Leaves the enemy as if it was just created, its body stays in the world but
+	 * inactive until it is obtained again
+	 */
+	@Override
+	public void reset() {
+		PathFinder pathFinder = getController().getPathFinder();
+		pathFinder.cancel(pathRequest);
+		pathFinder.forget(this);
+		pathRequest = 0;
+		
+		body.setActive(false);
+		body.setLinearVelocity(0.0f, 0.0f);
+		body.setAngularVelocity(0.0f);
+		
+		getFollowPath().setPath(null);
+		getFollowFlowField().done = false;
+		steering.setWeight(separationBehavior, Globals.enemySeparationWeight);
+		steering.setWeight(followPathBehavior, Globals.enemyFollowPathWeight);
+		steering.setWeight(followFlowFieldBehavior, 0.0f);
+		steering.setWeight(seekBehavior, 0.0f);
+		
+		setPosition(0.0f, 0.0f);
+		setRotation(0.0f);
+		setScale(1.0f);
+		setState(State.Idle);
+		damage = Globals.enemyDamage;
+		
+		// Spreads throttled updates over different ticks
+		aiTime = 0.0f;
+		aiTicks = MathUtils.random(Globals.enemyLodFarInterval - 1);
 	}
 	
 	@Override
 	public void dispose() {
 		super.dispose();
+		getController().getPathFinder().cancel(pathRequest);
+		getController().getPathFinder().forget(this);
 		
 		if (body != null) {
 			getController().getWorld().destroyBody(body);
@@ -101,7 +142,7 @@ public class Enemy extends Entity implements PathFinder.Callback {
 		}
 	}
 	
-	public Vector2[] getPath() {
+	public Path getPath() {
 		return path;
 	}
 	
@@ -114,7 +155,15 @@ public class Enemy extends Entity implements PathFinder.Callback {
 	}
 	
 	public FollowPath getFollowPath() {
-		return (FollowPath)steeringBehaviors.get(0);
+		return (FollowPath)steering.get(followPathBehavior);
+	}
+	
+	public FollowFlowField getFollowFlowField() {
+		return (FollowFlowField)steering.get(followFlowFieldBehavior);
+	}
+	
+	public float getSteeringWeight(int behavior) {
+		return steering.getWeight(behavior);
 	}
 	
 	@Override
@@ -146,21 +195,15 @@ public class Enemy extends Entity implements PathFinder.Callback {
 		
 		updateAI(delta);
 		
-		steering.reset();
-		
-		Seek seek = (Seek)steeringBehaviors.get(2);
+		Seek seek = (Seek)steering.get(seekBehavior);
 		seek.setTarget(getController().getPlayer().getPosition());
 		
-		for (int i = 0; i < steeringBehaviors.size; ++i) {
-			steering.add(steeringBehaviors.get(i).update(delta), steeringWeights.get(i));
-		}
-		
-		steering.linear.limit(Globals.enemyForce);
+		SteeringData force = steering.update(delta);
 		
 		Vector2 velocity = body.getLinearVelocity();
 		
-		if (canMove() && steering.linear.len2() > 0.0f ) {
-			body.applyForceToCenter(steering.linear.x, steering.linear.y, true);
+		if (canMove() && force.linear.len2() > 0.0f ) {
+			body.applyForceToCenter(force.linear.x, force.linear.y, true);
 			velocity.limit(Globals.enemyMaxSpeed);
 		
 			// Look where you're going
@@ -175,6 +218,46 @@ public class Enemy extends Entity implements PathFinder.Callback {
 		body.setLinearVelocity(velocity);
 	}	
 	
+	/**
+	 * Moves the entity to where its body is, without writing back to the body
+	 */
+	public void syncWithBody() {
+		Vector2 bodyPos = body.getPosition();
+		super.setPosition(bodyPos.x, bodyPos.y);
+	}
+	
+	/**
+	 * Runs the state machine, steering is left to the SteeringSystem
+	 */
+	public void updateState(float delta) {
+		updateAI(delta);
+	}
+	
+	/**
+	 * Accumulates time until the enemy is due an update, every interval ticks
+	 *
+	 * @return time since the last update if it is due now, 0 otherwise
+	 */
+	public float scheduleAI(float delta, int interval) {
+		aiTime += delta;
+		
+		if (++aiTicks < interval) {
+			return 0.0f;
+		}
+		
+		float time = aiTime;
+		aiTicks = 0;
+		aiTime = 0.0f;
+		return time;
+	}
+	
+	/**
+	 * Only turns the entity, the body has fixed rotation and does not need it
+	 */
+	public void setHeading(float rotation) {
+		super.setRotation(rotation);
+	}
+	
 	@Override
 	public void render(SpriteBatch batch) {
 		float width = region.getRegionWidth();
@@ -195,7 +278,7 @@ public class Enemy extends Entity implements PathFinder.Callback {
 				   getRotation() * MathUtils.radiansToDegrees);
 	}
 	
-	private boolean canMove() {
+	public boolean canMove() {
 		State state = getState();
 		
 		return (state != State.Die && state != State.Erase);
@@ -215,10 +298,17 @@ public class Enemy extends Entity implements PathFinder.Callback {
 	}
 	
 	private void updateIdle() {
+		// The shared flow field replaces individual path requests
+		if (Globals.enemyFlowField) {
+			steering.setWeight(followFlowFieldBehavior, Globals.enemyFollowPathWeight);
+			setState(State.Move);
+			return;
+		}
+		
 		WorldController controller = getController();
 		Vector2 playerPos = controller.getPlayer().getPosition();
 		Vector2 position = getPosition();
-		controller.getPathFinder().requestPath(position.x, position.y, playerPos.x, playerPos.y, this);
+		pathRequest = controller.getPathFinder().requestPath(position.x, position.y, playerPos.x, playerPos.y, path, this);
 		setState(State.WaitingForPath);
 	}
 	
@@ -227,34 +317,33 @@ public class Enemy extends Entity implements PathFinder.Callback {
 		Vector2 playerPos = controller.getPlayer().getPosition();
 		Vector2 position = getPosition();
 		
+		if (Globals.enemyFlowField) {
+			boolean done = getFollowFlowField().isDone();
+			steering.setWeight(seekBehavior, done? Globals.enemySeekWeight : 0.0f);
+			return;
+		}
+		
 		// Check distance with the player (may need to repath)
-		if (path[path.length - 1].dst2(playerPos) > Globals.enemyRePathDistance * Globals.enemyRePathDistance) {
+		if (path.get(path.getSize() - 1).dst2(playerPos) > Globals.enemyRePathDistance * Globals.enemyRePathDistance) {
 			setState(State.Idle);
 			return;
 		}
 		
 		if (getFollowPath().isDone()) {
-			steeringWeights.set(0, 0.0f);
-			steeringWeights.set(2, Globals.enemySeekWeight);
+			steering.setWeight(followPathBehavior, 0.0f);
+			steering.setWeight(seekBehavior, Globals.enemySeekWeight);
 		}
 	}
 
 	@Override
-	public void onPathRequest(long id, ResultCode code, Array<Vector2> path) {
+	public void onPathRequest(long id, ResultCode code, Path path) {
 		if (code != PathFinder.ResultCode.PathFound) {
 			return;
 		}
 		
-		this.path = new Vector2[path.size];
-		
-		for (int i = 0; i < path.size; ++i) {
-			Vector2 wayPoint = path.get(i);
-			this.path[i] = new Vector2(wayPoint.x, wayPoint.y);
-		}
-		
-		getFollowPath().setPath(this.path);
-		steeringWeights.set(0, Globals.enemyFollowPathWeight);
-		steeringWeights.set(2, 0.0f);
+		getFollowPath().setPath(path);
+		steering.setWeight(followPathBehavior, Globals.enemyFollowPathWeight);
+		steering.setWeight(seekBehavior, 0.0f);
 		
 		setState(State.Move);
 	}
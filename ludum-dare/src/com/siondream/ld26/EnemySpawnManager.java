@@ -23,9 +23,7 @@ public class EnemySpawnManager implements Disposable {
 		}
 		
 		public void spawn() {
-			Enemy enemy = new Enemy(controller);
-			enemy.setPosition(position);
-			controller.getEnemies().add(enemy);
+			controller.spawnEnemy(position);
 			timeSinceLastSpawn = 0.0f;
 		}
 		
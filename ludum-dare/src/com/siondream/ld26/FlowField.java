@@ -0,0 +1,133 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * Breadth first search from a single target over the whole NavGrid.
+ *
+ * Every reachable cell stores the next cell to step into to get closer to the
+ * target, so any number of agents can head for it with an O(1) lookup each.
+ * The field is only rebuilt when the target moves to a different cell.
+ */
+public class FlowField {
+	
+	private NavGrid grid;
+	private int[] next;
+	private int[] distance;
+	private int[] queue;
+	private int target;
+	private int builds;
+	
+	public FlowField(NavGrid grid) {
+		int numCells = grid.getNumCells();
+		
+		this.grid = grid;
+		next = new int[numCells];
+		distance = new int[numCells];
+		queue = new int[numCells];
+		target = -1;
+		builds = 0;
+		
+		clear();
+	}
+	
+	public int getTarget() {
+		return target;
+	}
+	
+	/**
+	 * @return number of times the field has been rebuilt, for profiling
+	 */
+	public int getBuildCount() {
+		return builds;
+	}
+	
+	public void setTarget(float x, float y) {
+		int cellX = grid.getCellX(x);
+		int cellY = grid.getCellY(y);
+		int cell = grid.isInside(cellX, cellY)? grid.getIndex(cellX, cellY) : -1;
+		
+		if (cell != target) {
+			target = cell;
+			build();
+		}
+	}
+	
+	/**
+	 * @return steps from cell to the target or -1 if it cannot be reached
+	 */
+	public int getDistance(int cell) {
+		return distance[cell];
+	}
+	
+	/**
+	 * @return next cell towards the target, -1 if cell is the target or unreachable
+	 */
+	public int getNext(int cell) {
+		return next[cell];
+	}
+	
+	/**
+	 * Writes in waypoint the centre of the next cell from the given world position
+	 *
+	 * @return false if there is nowhere to go
+	 */
+	public boolean getWaypoint(float x, float y, Vector2 waypoint) {
+		int cellX = grid.getCellX(x);
+		int cellY = grid.getCellY(y);
+		
+		if (!grid.isInside(cellX, cellY)) {
+			return false;
+		}
+		
+		int cell = next[grid.getIndex(cellX, cellY)];
+		
+		if (cell == -1) {
+			return false;
+		}
+		
+		waypoint.set(grid.getCentreX(grid.getX(cell)), grid.getCentreY(grid.getY(cell)));
+		return true;
+	}
+	
+	private void clear() {
+		for (int i = 0; i < next.length; ++i) {
+			next[i] = -1;
+			distance[i] = -1;
+		}
+	}
+	
+	private void build() {
+		clear();
+		++builds;
+		
+		if (target == -1) {
+			return;
+		}
+		
+		int head = 0;
+		int tail = 0;
+		
+		distance[target] = 0;
+		queue[tail++] = target;
+		
+		while (head < tail) {
+			int current = queue[head++];
+			int mask = grid.getNeighbours(current);
+			
+			for (int i = 0; mask != 0; ++i, mask >>= 1) {
+				if ((mask & 1) == 0) {
+					continue;
+				}
+				
+				int neighbour = current + grid.getOffset(i);
+				
+				if (distance[neighbour] == -1) {
+					distance[neighbour] = distance[current] + 1;
+					next[neighbour] = current;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+	}
+}
@@ -52,6 +52,17 @@ public class Globals {
 	public static final float enemySeparationWeight = 0.4f;
 	public static final float enemySeekWeight = 0.6f;
 	public static final float enemyDamage = 25.0f;
+	public static final boolean enemyFlowField = false;
+	public static final boolean enemyBatchedSteering = true;
+	public static final boolean enemyParallelSteering = true;
+	public static final int enemyParallelMinEnemies = 256;
+	public static final boolean enemySteeringCheck = false;
+	public static final boolean enemyLod = true;
+	public static final float enemyLodNearDistance = 12.0f;
+	public static final float enemyLodFarDistance = 30.0f;
+	public static final float enemyLodViewMargin = 2.0f;
+	public static final int enemyLodMidInterval = 3;
+	public static final int enemyLodFarInterval = 10;
 	
 	// Exit portal
 	public static final int exitLightRays = 10;
@@ -80,6 +91,11 @@ public class Globals {
 	public static final String tileset = "test";
 	public static final String maxEnemiesProperty = "maxEnemies";
 	public static final Color ambientLight = new Color(1.0f, 1.0f, 1.0f, 0.01f);
+	public static final boolean lightStaticOccluders = true;
+	public static final boolean lightParallelUpdate = true;
+	public static final int lightParallelMinLights = 32;
+	public static final boolean lightBatching = true;
+	public static final int lightRayBudget = 512;
 	
 	// Camera
 	public static final float cameraMaxDistanceFromTarget = 3.0f;
@@ -92,6 +108,20 @@ public class Globals {
 	
 	// Pathfinder
 	public static final long pathFinderBudgetMs = 5;
+	public static final int pathFinderBudgetExpansions = 4000;
+	public static final int pathFinderSliceExpansions = 256;
+	public static final int pathFinderMaxSearches = 4;
+	public static final int pathFinderMaxPlanners = 32;
+	public static final long pathFinderPlannerIdleMs = 2000;
+	public static final float pathFinderFocusRefreshDistance = 2.0f;
+	public static final int pathCacheSize = 64;
+	public static final long pathCacheTTLMs = 2000;
+	public static final PathFinder.Algorithm pathFinderAlgorithm = PathFinder.Algorithm.AStar;
+	public static final String pathFinderAlgorithmProperty = "pathFinder";
+	public static final int pathFinderClusterSize = 16;
+	public static final boolean pathFinderAsync = true;
+	public static final int pathFinderMaxAsyncSearches = 16;
+	public static final boolean pathFinderSmoothing = true;
 	
 	// Game state control
 	public static final float stateVictoryTime = 1.0f;
@@ -0,0 +1,180 @@
+package com.siondream.ld26;
+
+/**
+ * A* over a NavGrid keeping all per cell data in flat arrays indexed by cell.
+ *
+ * Everything is allocated when the search is created, a search itself does not
+ * allocate. Arrays are reset lazily: a cell only counts as visited when its stamp
+ * matches the id of the search in progress.
+ */
+public class GridSearch implements PathSearch {
+	
+	private NavGrid grid;
+	private NodeHeap open;
+	private float[] g;
+	private float[] h;
+	private int[] parent;
+	private int[] visitedID;
+	private int searchID;
+	private int origin;
+	private int destination;
+	private int expanded;
+	
+	public GridSearch(NavGrid grid) {
+		int numCells = grid.getNumCells();
+		
+		this.grid = grid;
+		open = new NodeHeap(numCells);
+		g = new float[numCells];
+		h = new float[numCells];
+		parent = new int[numCells];
+		visitedID = new int[numCells];
+		searchID = 0;
+		origin = -1;
+		destination = -1;
+		expanded = 0;
+	}
+	
+	public NavGrid getGrid() {
+		return grid;
+	}
+	
+	@Override
+	public boolean search(int origin, int destination) {
+		start(origin, destination);
+		return resume(Integer.MAX_VALUE) == State.Found;
+	}
+	
+	@Override
+	public void start(int origin, int destination) {
+		this.origin = origin;
+		this.destination = destination;
+		
+		++searchID;
+		open.clear();
+		expanded = 0;
+		
+		g[origin] = 0.0f;
+		h[origin] = h(origin);
+		parent[origin] = -1;
+		visitedID[origin] = searchID;
+		open.setValue(origin, h[origin]);
+	}
+	
+	@Override
+	public State resume(int maxExpansions) {
+		for (int i = 0; i < maxExpansions; ++i) {
+			if (open.isEmpty()) {
+				return State.NotFound;
+			}
+			
+			int current = open.pop();
+			
+			if (current == destination) {
+				return State.Found;
+			}
+			
+			++expanded;
+			expand(current);
+		}
+		
+		return State.Searching;
+	}
+	
+	@Override
+	public int getExpandedCount() {
+		return expanded;
+	}
+	
+	@Override
+	public PathSearch copy() {
+		return new GridSearch(grid);
+	}
+	
+	/**
+	 * There is one waypoint per cell even if consecutive nodes are several cells apart
+	 */
+	@Override
+	public void getPath(Path path) {
+		path.clear();
+		
+		int width = grid.getWidth();
+		
+		for (int cell = destination; cell != -1; cell = parent[cell]) {
+			int x = cell % width;
+			int y = cell / width;
+			int next = parent[cell];
+			
+			path.add(grid.getCentreX(x), grid.getCentreY(y));
+			
+			if (next == -1) {
+				break;
+			}
+			
+			// Fill in the cells between both nodes, they are always on a straight or diagonal line
+			int nextX = next % width;
+			int nextY = next / width;
+			int stepX = nextX > x? 1 : (nextX < x? -1 : 0);
+			int stepY = nextY > y? 1 : (nextY < y? -1 : 0);
+			
+			for (x += stepX, y += stepY; x != nextX || y != nextY; x += stepX, y += stepY) {
+				path.add(grid.getCentreX(x), grid.getCentreY(y));
+			}
+		}
+		
+		path.reverse();
+	}
+	
+	protected void expand(int current) {
+		int mask = grid.getNeighbours(current);
+		
+		for (int i = 0; mask != 0; ++i, mask >>= 1) {
+			if ((mask & 1) != 0) {
+				relax(current, current + grid.getOffset(i), 1.0f);
+			}
+		}
+	}
+	
+	/**
+	 * Records current as the parent of neighbour if it improves its cost
+	 */
+	protected void relax(int current, int neighbour, float cost) {
+		float nextG = g[current] + cost;
+		
+		if (visitedID[neighbour] != searchID) {
+			visitedID[neighbour] = searchID;
+			g[neighbour] = Float.POSITIVE_INFINITY;
+			h[neighbour] = h(neighbour);
+		}
+		else if (nextG >= g[neighbour]) {
+			return;
+		}
+		
+		// Better route, requeues the cell even if it was already expanded
+		g[neighbour] = nextG;
+		parent[neighbour] = current;
+		open.setValue(neighbour, nextG + h[neighbour]);
+	}
+	
+	protected int getParent(int cell) {
+		return parent[cell];
+	}
+	
+	protected int getOrigin() {
+		return origin;
+	}
+	
+	protected int getDestination() {
+		return destination;
+	}
+	
+	/**
+	 * Squared Euclidean distance, it overestimates so paths are found with few
+	 * expansions but are not always the shortest ones
+	 */
+	protected float h(int cell) {
+		int x = grid.getX(cell) - grid.getX(destination);
+		int y = grid.getY(cell) - grid.getY(destination);
+		return x * x + y * y;
+	}
+}
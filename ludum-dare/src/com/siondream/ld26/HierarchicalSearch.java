@@ -0,0 +1,495 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Hierarchical path finding (HPA*) over a NavGrid.
+ *
+ * When it is created the grid is split in square clusters. Every stretch of border
+ * that can be crossed between two clusters gets an entrance, a pair of nodes, and
+ * the cost between every two entrances of a cluster is precomputed. Queries search
+ * that abstract graph and then refine each hop with a search limited to a single
+ * cluster, so the work depends on the number of entrances instead of cells.
+ *
+ * Paths are close to optimal but not guaranteed to be the shortest ones. Copies
+ * share the abstract graph, which is read only once built.
+ */
+public class HierarchicalSearch implements PathSearch {
+	
+	private static final int[] dx = { -1,  0,  1, -1, 1, -1, 0, 1 };
+	private static final int[] dy = { -1, -1, -1,  0, 0,  1, 1, 1 };
+	
+	private NavGrid grid;
+	private int clusterSize;
+	private int clustersX;
+	private int clustersY;
+	
+	// Abstract graph
+	private IntArray nodeCells;
+	private int[] cellNodes;
+	private Array<IntArray> edges;
+	private Array<FloatArray> costs;
+	private Array<IntArray> clusterNodes;
+	
+	// Abstract search, the last two nodes are the origin and destination of the query
+	private NodeHeap open;
+	private float[] g;
+	private int[] parent;
+	private int[] visitedID;
+	private int searchID;
+	private int expanded;
+	private int origin;
+	private int destination;
+	private int originCluster;
+	private int destinationCluster;
+	private int originNode;
+	private int destinationNode;
+	
+	private ClusterSearch originSearch;
+	private ClusterSearch destinationSearch;
+	private ClusterSearch refineSearch;
+	
+	public HierarchicalSearch(NavGrid grid, int clusterSize) {
+		this.grid = grid;
+		this.clusterSize = clusterSize;
+		clustersX = (grid.getWidth() + clusterSize - 1) / clusterSize;
+		clustersY = (grid.getHeight() + clusterSize - 1) / clusterSize;
+		
+		nodeCells = new IntArray();
+		cellNodes = new int[grid.getNumCells()];
+		edges = new Array<IntArray>();
+		costs = new Array<FloatArray>();
+		clusterNodes = new Array<IntArray>();
+		
+		originSearch = new ClusterSearch();
+		destinationSearch = new ClusterSearch();
+		refineSearch = new ClusterSearch();
+		
+		for (int i = 0; i < cellNodes.length; ++i) {
+			cellNodes[i] = -1;
+		}
+		
+		for (int i = 0; i < clustersX * clustersY; ++i) {
+			clusterNodes.add(new IntArray());
+		}
+		
+		buildEntrances();
+		buildIntraEdges();
+		initSearch();
+	}
+	
+	private HierarchicalSearch(HierarchicalSearch source) {
+		grid = source.grid;
+		clusterSize = source.clusterSize;
+		clustersX = source.clustersX;
+		clustersY = source.clustersY;
+		nodeCells = source.nodeCells;
+		cellNodes = source.cellNodes;
+		edges = source.edges;
+		costs = source.costs;
+		clusterNodes = source.clusterNodes;
+		
+		originSearch = new ClusterSearch();
+		destinationSearch = new ClusterSearch();
+		refineSearch = new ClusterSearch();
+		
+		initSearch();
+	}
+	
+	private void initSearch() {
+		int numNodes = nodeCells.size + 2;
+		originNode = numNodes - 2;
+		destinationNode = numNodes - 1;
+		open = new NodeHeap(numNodes);
+		g = new float[numNodes];
+		parent = new int[numNodes];
+		visitedID = new int[numNodes];
+		searchID = 0;
+		expanded = 0;
+	}
+	
+	/**
+	 * @return number of entrance nodes in the abstract graph
+	 */
+	public int getNumNodes() {
+		return nodeCells.size;
+	}
+	
+	@Override
+	public boolean search(int origin, int destination) {
+		start(origin, destination);
+		return resume(Integer.MAX_VALUE) == State.Found;
+	}
+	
+	@Override
+	public void start(int origin, int destination) {
+		this.origin = origin;
+		this.destination = destination;
+		
+		++searchID;
+		open.clear();
+		expanded = 0;
+		
+		originCluster = getCluster(origin);
+		destinationCluster = getCluster(destination);
+		originSearch.run(originCluster, origin, -1);
+		destinationSearch.run(destinationCluster, destination, -1);
+		
+		g[originNode] = 0.0f;
+		parent[originNode] = -1;
+		visitedID[originNode] = searchID;
+		open.setValue(originNode, h(origin));
+	}
+	
+	@Override
+	public State resume(int maxExpansions) {
+		for (int expansions = 0; expansions < maxExpansions; ++expansions) {
+			if (open.isEmpty()) {
+				return State.NotFound;
+			}
+			
+			int current = open.pop();
+			
+			if (current == destinationNode) {
+				return State.Found;
+			}
+			
+			++expanded;
+			
+			if (current == originNode) {
+				// Leave the origin cluster through any of its entrances
+				IntArray nodes = clusterNodes.get(originCluster);
+				
+				for (int i = 0; i < nodes.size; ++i) {
+					int node = nodes.get(i);
+					relax(current, node, originSearch.getDistance(nodeCells.get(node)));
+				}
+				
+				if (originCluster == destinationCluster) {
+					relax(current, destinationNode, originSearch.getDistance(destination));
+				}
+				
+				continue;
+			}
+			
+			IntArray targets = edges.get(current);
+			FloatArray targetCosts = costs.get(current);
+			
+			for (int i = 0; i < targets.size; ++i) {
+				relax(current, targets.get(i), targetCosts.get(i));
+			}
+			
+			int cell = nodeCells.get(current);
+			
+			if (getCluster(cell) == destinationCluster) {
+				relax(current, destinationNode, destinationSearch.getDistance(cell));
+			}
+		}
+		
+		return State.Searching;
+	}
+	
+	@Override
+	public void getPath(Path path) {
+		path.clear();
+		
+		for (int node = destinationNode; node != -1; node = parent[node]) {
+			int cell = getNodeCell(node);
+			int previous = parent[node];
+			
+			if (previous == -1) {
+				path.add(grid.getCentreX(grid.getX(cell)), grid.getCentreY(grid.getY(cell)));
+				break;
+			}
+			
+			int previousCell = getNodeCell(previous);
+			int cluster = getCluster(cell);
+			
+			if (cluster != getCluster(previousCell)) {
+				// Entrances on both sides of a border are neighbours
+				path.add(grid.getCentreX(grid.getX(cell)), grid.getCentreY(grid.getY(cell)));
+			}
+			else {
+				refineSearch.run(cluster, previousCell, cell);
+				refineSearch.addPath(cell, path);
+			}
+		}
+		
+		path.reverse();
+	}
+	
+	@Override
+	public int getExpandedCount() {
+		return expanded;
+	}
+	
+	@Override
+	public PathSearch copy() {
+		return new HierarchicalSearch(this);
+	}
+	
+	private void relax(int current, int node, float cost) {
+		if (cost < 0.0f) {
+			return;
+		}
+		
+		float nextG = g[current] + cost;
+		
+		if (visitedID[node] == searchID && nextG >= g[node]) {
+			return;
+		}
+		
+		visitedID[node] = searchID;
+		g[node] = nextG;
+		parent[node] = current;
+		open.setValue(node, nextG + h(getNodeCell(node)));
+	}
+	
+	private float h(int cell) {
+		int x = Math.abs(grid.getX(cell) - grid.getX(destination));
+		int y = Math.abs(grid.getY(cell) - grid.getY(destination));
+		return Math.max(x, y);
+	}
+	
+	private int getNodeCell(int node) {
+		if (node == originNode) {
+			return origin;
+		}
+		
+		if (node == destinationNode) {
+			return destination;
+		}
+		
+		return nodeCells.get(node);
+	}
+	
+	private int getCluster(int cell) {
+		return grid.getX(cell) / clusterSize + (grid.getY(cell) / clusterSize) * clustersX;
+	}
+	
+	private void buildEntrances() {
+		int width = grid.getWidth();
+		int height = grid.getHeight();
+		
+		// One entrance in the middle of every run of cells that can be crossed straight
+		for (int border = clusterSize; border < width; border += clusterSize) {
+			for (int start = 0; start < height; start += clusterSize) {
+				int end = Math.min(start + clusterSize, height);
+				int runStart = -1;
+				
+				for (int y = start; y <= end; ++y) {
+					boolean crossable = y < end && grid.isWalkable(border - 1, y) && grid.isWalkable(border, y);
+					
+					if (crossable && runStart == -1) {
+						runStart = y;
+					}
+					else if (!crossable && runStart != -1) {
+						int middle = (runStart + y - 1) / 2;
+						addEntrance(grid.getIndex(border - 1, middle), grid.getIndex(border, middle));
+						runStart = -1;
+					}
+				}
+			}
+		}
+		
+		for (int border = clusterSize; border < height; border += clusterSize) {
+			for (int start = 0; start < width; start += clusterSize) {
+				int end = Math.min(start + clusterSize, width);
+				int runStart = -1;
+				
+				for (int x = start; x <= end; ++x) {
+					boolean crossable = x < end && grid.isWalkable(x, border - 1) && grid.isWalkable(x, border);
+					
+					if (crossable && runStart == -1) {
+						runStart = x;
+					}
+					else if (!crossable && runStart != -1) {
+						int middle = (runStart + x - 1) / 2;
+						addEntrance(grid.getIndex(middle, border - 1), grid.getIndex(middle, border));
+						runStart = -1;
+					}
+				}
+			}
+		}
+		
+		// Diagonal moves between clusters only need their own entrance when they cut a
+		// corner, otherwise they can be done as two straight moves
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width - 1; ++x) {
+				if (!grid.isWalkable(x, y)) {
+					continue;
+				}
+				
+				for (int stepY = -1; stepY <= 1; stepY += 2) {
+					int nx = x + 1;
+					int ny = y + stepY;
+					
+					if (grid.isWalkable(nx, ny) &&
+						!grid.isWalkable(nx, y) &&
+						!grid.isWalkable(x, ny) &&
+						getCluster(grid.getIndex(x, y)) != getCluster(grid.getIndex(nx, ny))) {
+						addEntrance(grid.getIndex(x, y), grid.getIndex(nx, ny));
+					}
+				}
+			}
+		}
+	}
+	
+	private void buildIntraEdges() {
+		for (int cluster = 0; cluster < clusterNodes.size; ++cluster) {
+			IntArray nodes = clusterNodes.get(cluster);
+			
+			for (int i = 0; i < nodes.size; ++i) {
+				int node = nodes.get(i);
+				originSearch.run(cluster, nodeCells.get(node), -1);
+				
+				for (int j = 0; j < nodes.size; ++j) {
+					int other = nodes.get(j);
+					float distance = originSearch.getDistance(nodeCells.get(other));
+					
+					if (i != j && distance > 0.0f) {
+						addEdge(node, other, distance);
+					}
+				}
+			}
+		}
+	}
+	
+	private void addEntrance(int cellA, int cellB) {
+		int nodeA = getOrCreateNode(cellA);
+		int nodeB = getOrCreateNode(cellB);
+		addEdge(nodeA, nodeB, 1.0f);
+		addEdge(nodeB, nodeA, 1.0f);
+	}
+	
+	private int getOrCreateNode(int cell) {
+		int node = cellNodes[cell];
+		
+		if (node == -1) {
+			node = nodeCells.size;
+			nodeCells.add(cell);
+			cellNodes[cell] = node;
+			edges.add(new IntArray());
+			costs.add(new FloatArray());
+			clusterNodes.get(getCluster(cell)).add(node);
+		}
+		
+		return node;
+	}
+	
+	private void addEdge(int from, int to, float cost) {
+		IntArray targets = edges.get(from);
+		
+		if (targets.contains(to)) {
+			return;
+		}
+		
+		targets.add(to);
+		costs.get(from).add(cost);
+	}
+	
+	/**
+	 * Breadth first search that never leaves a cluster, indices are local to it
+	 */
+	private class ClusterSearch {
+		private int[] distance;
+		private int[] parent;
+		private int[] queue;
+		private int minX;
+		private int minY;
+		private int maxX;
+		private int maxY;
+		private int from;
+		
+		public ClusterSearch() {
+			distance = new int[clusterSize * clusterSize];
+			parent = new int[clusterSize * clusterSize];
+			queue = new int[clusterSize * clusterSize];
+		}
+		
+		/**
+		 * Searches from cell, stops early when it reaches target unless it is -1
+		 */
+		public void run(int cluster, int cell, int target) {
+			minX = (cluster % clustersX) * clusterSize;
+			minY = (cluster / clustersX) * clusterSize;
+			maxX = Math.min(minX + clusterSize, grid.getWidth());
+			maxY = Math.min(minY + clusterSize, grid.getHeight());
+			from = cell;
+			
+			for (int i = 0; i < distance.length; ++i) {
+				distance[i] = -1;
+			}
+			
+			int head = 0;
+			int tail = 0;
+			int start = toLocal(grid.getX(cell), grid.getY(cell));
+			int end = target != -1? toLocal(grid.getX(target), grid.getY(target)) : -1;
+			distance[start] = 0;
+			parent[start] = -1;
+			queue[tail++] = start;
+			
+			while (head < tail) {
+				int current = queue[head++];
+				
+				if (current == end) {
+					return;
+				}
+				
+				int x = minX + current % clusterSize;
+				int y = minY + current / clusterSize;
+				
+				for (int i = 0; i < dx.length; ++i) {
+					int nx = x + dx[i];
+					int ny = y + dy[i];
+					
+					if (nx < minX || nx >= maxX || ny < minY || ny >= maxY || !grid.isWalkable(nx, ny)) {
+						continue;
+					}
+					
+					int neighbour = toLocal(nx, ny);
+					
+					if (distance[neighbour] == -1) {
+						distance[neighbour] = distance[current] + 1;
+						parent[neighbour] = current;
+						queue[tail++] = neighbour;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * @return steps from the cell the search started at or -1 if unreachable
+		 */
+		public float getDistance(int cell) {
+			int x = grid.getX(cell);
+			int y = grid.getY(cell);
+			
+			if (x < minX || x >= maxX || y < minY || y >= maxY) {
+				return -1.0f;
+			}
+			
+			return distance[toLocal(x, y)];
+		}
+		
+		/**
+		 * Adds the cells from cell back to the start of the search, the start excluded
+		 */
+		public void addPath(int cell, Path path) {
+			int local = toLocal(grid.getX(cell), grid.getY(cell));
+			int start = toLocal(grid.getX(from), grid.getY(from));
+			
+			for (; local != start && local != -1; local = parent[local]) {
+				float x = grid.getCentreX(minX + local % clusterSize);
+				float y = grid.getCentreY(minY + local / clusterSize);
+				path.add(x, y);
+			}
+		}
+		
+		private int toLocal(int x, int y) {
+			return (x - minX) + (y - minY) * clusterSize;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.siondream.ld26;
+
+/**
+ * Jump Point Search for uniform cost 8-connected grids.
+ *
+ * Instead of queueing every neighbour it scans along straight and diagonal lines
+ * and only queues cells with forced neighbours (jump points). Moves are allowed
+ * to cut corners, like the plain search, and every step costs 1 so the cost
+ * between two jump points is the number of steps between them.
+ */
+public class JumpPointSearch extends GridSearch {
+	
+	private static final int[] dx = { -1,  0,  1, -1, 1, -1, 0, 1 };
+	private static final int[] dy = { -1, -1, -1,  0, 0,  1, 1, 1 };
+	
+	public JumpPointSearch(NavGrid grid) {
+		super(grid);
+	}
+	
+	@Override
+	public PathSearch copy() {
+		return new JumpPointSearch(getGrid());
+	}
+	
+	@Override
+	protected void expand(int current) {
+		NavGrid grid = getGrid();
+		int width = grid.getWidth();
+		int x = current % width;
+		int y = current / width;
+		int parent = getParent(current);
+		
+		if (parent == -1) {
+			for (int i = 0; i < dx.length; ++i) {
+				jump(current, x, y, dx[i], dy[i]);
+			}
+			
+			return;
+		}
+		
+		int px = parent % width;
+		int py = parent / width;
+		int dirX = x > px? 1 : (x < px? -1 : 0);
+		int dirY = y > py? 1 : (y < py? -1 : 0);
+		
+		if (dirX != 0 && dirY != 0) {
+			// Natural neighbours
+			jump(current, x, y, dirX, 0);
+			jump(current, x, y, 0, dirY);
+			jump(current, x, y, dirX, dirY);
+			
+			// Forced neighbours
+			if (!grid.isWalkable(x - dirX, y)) {
+				jump(current, x, y, -dirX, dirY);
+			}
+			
+			if (!grid.isWalkable(x, y - dirY)) {
+				jump(current, x, y, dirX, -dirY);
+			}
+		}
+		else if (dirX != 0) {
+			jump(current, x, y, dirX, 0);
+			
+			if (!grid.isWalkable(x, y + 1)) {
+				jump(current, x, y, dirX, 1);
+			}
+			
+			if (!grid.isWalkable(x, y - 1)) {
+				jump(current, x, y, dirX, -1);
+			}
+		}
+		else {
+			jump(current, x, y, 0, dirY);
+			
+			if (!grid.isWalkable(x + 1, y)) {
+				jump(current, x, y, 1, dirY);
+			}
+			
+			if (!grid.isWalkable(x - 1, y)) {
+				jump(current, x, y, -1, dirY);
+			}
+		}
+	}
+	
+	@Override
+	protected float h(int cell) {
+		NavGrid grid = getGrid();
+		int destination = getDestination();
+		int x = Math.abs(grid.getX(cell) - grid.getX(destination));
+		int y = Math.abs(grid.getY(cell) - grid.getY(destination));
+		return Math.max(x, y);
+	}
+	
+	private void jump(int current, int x, int y, int dirX, int dirY) {
+		int width = getGrid().getWidth();
+		int jumpPoint = findJumpPoint(x, y, dirX, dirY);
+		
+		if (jumpPoint != -1) {
+			int steps = Math.max(Math.abs(jumpPoint % width - x), Math.abs(jumpPoint / width - y));
+			relax(current, jumpPoint, steps);
+		}
+	}
+	
+	/**
+	 * Walks from (x, y) in the given direction until it finds a jump point
+	 *
+	 * @return cell index of the jump point or -1 if the scan hit a wall
+	 */
+	private int findJumpPoint(int x, int y, int dirX, int dirY) {
+		NavGrid grid = getGrid();
+		int destination = getDestination();
+		
+		while (true) {
+			x += dirX;
+			y += dirY;
+			
+			if (!grid.isWalkable(x, y)) {
+				return -1;
+			}
+			
+			int cell = grid.getIndex(x, y);
+			
+			if (cell == destination) {
+				return cell;
+			}
+			
+			if (dirX != 0 && dirY != 0) {
+				if ((!grid.isWalkable(x - dirX, y) && grid.isWalkable(x - dirX, y + dirY)) ||
+					(!grid.isWalkable(x, y - dirY) && grid.isWalkable(x + dirX, y - dirY))) {
+					return cell;
+				}
+				
+				// Diagonal moves stop wherever a straight scan would find something
+				if (findJumpPoint(x, y, dirX, 0) != -1 || findJumpPoint(x, y, 0, dirY) != -1) {
+					return cell;
+				}
+			}
+			else if (dirX != 0) {
+				if ((!grid.isWalkable(x, y + 1) && grid.isWalkable(x + dirX, y + 1)) ||
+					(!grid.isWalkable(x, y - 1) && grid.isWalkable(x + dirX, y - 1))) {
+					return cell;
+				}
+			}
+			else {
+				if ((!grid.isWalkable(x + 1, y) && grid.isWalkable(x + 1, y + dirY)) ||
+					(!grid.isWalkable(x - 1, y) && grid.isWalkable(x - 1, y + dirY))) {
+					return cell;
+				}
+			}
+		}
+	}
+}
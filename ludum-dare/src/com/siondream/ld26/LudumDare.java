@@ -16,9 +16,11 @@ import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Logger;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.lights.box2dLight.Light;
+import com.lights.box2dLight.LightExecutor;
 import com.lights.box2dLight.RayHandler;
 
 public class LudumDare extends Game {
@@ -37,9 +39,22 @@ public class LudumDare extends Game {
 	private Stage stage;
 	private Skin skin;
 	private Music music;
+	private TaskExecutor executor;
 	
 	private static TweenManager tweenManager;
 	
+	public LudumDare() {
+		this(new SerialExecutor());
+	}
+	
+	/**
+	 * @param executor worker threads for the systems that can use them, the game
+	 * disposes it on exit
+	 */
+	public LudumDare(TaskExecutor executor) {
+		this.executor = executor;
+	}
+	
 	@Override
 	public void create() {
 		logger = new Logger(TAG, Globals.debugLevel);
@@ -68,6 +83,22 @@ public class LudumDare extends Game {
 		rayHandler = new RayHandler(world);
 		rayHandler.setAmbientLight(Globals.ambientLight);
 		rayHandler.setShadows(true);
+		rayHandler.setBatching(Globals.lightBatching);
+		rayHandler.setRayBudget(Globals.lightRayBudget);
+		
+		if (Globals.lightParallelUpdate && executor.getParallelism() > 0) {
+			rayHandler.setExecutor(new LightExecutor() {
+				@Override
+				public void invokeAll(Array<? extends Runnable> tasks) {
+					executor.invokeAll(tasks);
+				}
+				
+				@Override
+				public int getParallelism() {
+					return executor.getParallelism();
+				}
+			}, Globals.lightParallelMinLights);
+		}
 		
 		batch = new SpriteBatch();
 		
@@ -92,6 +123,7 @@ public class LudumDare extends Game {
 		stage.dispose();
 		skin.dispose();
 		batch.dispose();
+		executor.dispose();
 	}
 
 	@Override
@@ -187,6 +219,10 @@ public class LudumDare extends Game {
 		return batch;
 	}
 	
+	public TaskExecutor getExecutor() {
+		return executor;
+	}
+	
 	public static TweenManager getTweenManager() {
 		return tweenManager;
 	}
@@ -166,6 +166,13 @@ public class MapBodyManager {
 		bodies.clear();
 	}
 	
+	/**
+	 * @return static bodies created so far, they stay valid until destroyPhysics() is called.
+	 */
+	public Array<Body> getBodies() {
+		return bodies;
+	}
+	
 	private void loadMaterialsFile(String materialsFile) {
 		logger.info("adding default material");
 		
@@ -80,6 +80,11 @@ public class MenuScreen extends LudumScreen {
 
 		map = mapLoader.load("data/menu.tmx");
 		mapBodyManager.createPhysics(map, Globals.physicsLayer);
+		
+		if (Globals.lightStaticOccluders) {
+			game.getRayHandler().setStaticBodies(mapBodyManager.getBodies());
+		}
+		
 		mapRenderer = new OrthogonalTiledMapRenderer(map, Globals.pixelsToMetres);
 	    
 		OrthographicCamera camera = game.getCamera();
@@ -149,6 +154,7 @@ public class MenuScreen extends LudumScreen {
 		lightRadius.remove();
 		game.getStage().clear();
 		map.dispose();
+		game.getRayHandler().setStaticBodies(null);
 		mapBodyManager.destroyPhysics();
 	}
 	
@@ -0,0 +1,272 @@
+package com.siondream.ld26;
+
+import java.util.Iterator;
+
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTile;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer.Cell;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Walkability view of the background tile layer used by the path finder.
+ *
+ * The layer is copied when the grid is created, so it never changes afterwards and
+ * can be read from several threads at once. Cells are addressed by index, x + y * width.
+ *
+ * Every cell also keeps a mask of the neighbours it can move to, bit i standing for
+ * the move (dx[i], dy[i]), so searches do not bounds check and look up eight cells
+ * each time they expand one.
+ *
+ * Walkable cells are also labelled with the connected area they belong to, so a
+ * request between two areas can be rejected without searching. A new map means a
+ * new NavGrid, which always comes with its own labels.
+ */
+public class NavGrid {
+	
+	private static final int[] dx = { -1,  0,  1, -1, 1, -1, 0, 1 };
+	private static final int[] dy = { -1, -1, -1,  0, 0,  1, 1, 1 };
+	
+	private boolean[] tiles;
+	private boolean[] walkable;
+	private byte[] neighbours;
+	private int[] offsets;
+	private int[] components;
+	private int numComponents;
+	private int width;
+	private int height;
+	private float tileWidth;
+	private float tileHeight;
+	
+	public NavGrid(TiledMap map) {
+		ObjectMap<TiledMapTile, Boolean> walkability = new ObjectMap<TiledMapTile, Boolean>();
+		TiledMapTileLayer layer = (TiledMapTileLayer)map.getLayers().get(Globals.backgroundLayer);
+		
+		Iterator<TiledMapTile> it = map.getTileSets().getTileSet(Globals.tileset).iterator();
+		while(it.hasNext()) {
+			TiledMapTile tile = it.next();
+			boolean walkable = Boolean.parseBoolean(tile.getProperties().get("walkable", "false", String.class));
+			walkability.put(tile, walkable);
+		}
+		
+		width = layer.getWidth();
+		height = layer.getHeight();
+		tileWidth = layer.getTileWidth();
+		tileHeight = layer.getTileHeight();
+		tiles = new boolean[width * height];
+		walkable = new boolean[width * height];
+		
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				Cell cell = layer.getCell(x, y);
+				TiledMapTile tile = cell != null? cell.getTile() : null;
+				
+				if (tile != null) {
+					Boolean value = walkability.get(tile);
+					tiles[getIndex(x, y)] = true;
+					walkable[getIndex(x, y)] = value != null && value;
+				}
+			}
+		}
+		
+		buildNeighbours();
+		buildComponents();
+	}
+	
+	public float getTileWidth() {
+		return tileWidth;
+	}
+	
+	public float getTileHeight() {
+		return tileHeight;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public int getNumCells() {
+		return width * height;
+	}
+	
+	public int getIndex(int x, int y) {
+		return x + y * width;
+	}
+	
+	public int getX(int index) {
+		return index % width;
+	}
+	
+	public int getY(int index) {
+		return index / width;
+	}
+	
+	public int getCellX(float x) {
+		return (int)(x * Globals.metresToPixels) / (int)tileWidth;
+	}
+	
+	public int getCellY(float y) {
+		return (int)(y * Globals.metresToPixels) / (int)tileHeight;
+	}
+	
+	public float getCentreX(int x) {
+		return (x * tileWidth + tileWidth * 0.5f) * Globals.pixelsToMetres;
+	}
+	
+	public float getCentreY(int y) {
+		return (y * tileHeight + tileHeight * 0.5f) * Globals.pixelsToMetres;
+	}
+	
+	public boolean isInside(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
+	}
+	
+	public boolean hasTile(int x, int y) {
+		return isInside(x, y) && tiles[getIndex(x, y)];
+	}
+	
+	public boolean isWalkable(int x, int y) {
+		return isInside(x, y) && walkable[getIndex(x, y)];
+	}
+	
+	/**
+	 * Walks every cell the segment between both cell centres touches. Where it goes
+	 * exactly through a corner both cells sharing that corner have to be walkable.
+	 *
+	 * @return whether all of them are walkable
+	 */
+	public boolean hasLineOfSight(int x0, int y0, int x1, int y1) {
+		int distanceX = Math.abs(x1 - x0);
+		int distanceY = Math.abs(y1 - y0);
+		int stepX = x1 > x0? 1 : -1;
+		int stepY = y1 > y0? 1 : -1;
+		int error = distanceX - distanceY;
+		int x = x0;
+		int y = y0;
+		
+		for (int n = distanceX + distanceY; n > 0; --n) {
+			if (!isWalkable(x, y)) {
+				return false;
+			}
+			
+			if (error > 0) {
+				x += stepX;
+				error -= 2 * distanceY;
+			}
+			else if (error < 0) {
+				y += stepY;
+				error += 2 * distanceX;
+			}
+			else {
+				if (!isWalkable(x + stepX, y) || !isWalkable(x, y + stepY)) {
+					return false;
+				}
+				
+				x += stepX;
+				y += stepY;
+				error += 2 * (distanceX - distanceY);
+				--n;
+			}
+		}
+		
+		return isWalkable(x, y);
+	}
+	
+	/**
+	 * @return bit i is set if the move (dx[i], dy[i]) from the cell lands on a walkable cell
+	 */
+	public int getNeighbours(int index) {
+		return neighbours[index] & 0xff;
+	}
+	
+	/**
+	 * @return what to add to a cell index to move in the given direction
+	 */
+	public int getOffset(int direction) {
+		return offsets[direction];
+	}
+	
+	/**
+	 * @return label of the connected area the cell belongs to, -1 if not walkable
+	 */
+	public int getComponent(int index) {
+		return components[index];
+	}
+	
+	public int getNumComponents() {
+		return numComponents;
+	}
+	
+	/**
+	 * @return whether there is a path between both cells, given by index
+	 */
+	public boolean isConnected(int origin, int destination) {
+		return components[origin] != -1 && components[origin] == components[destination];
+	}
+	
+	private void buildNeighbours() {
+		neighbours = new byte[width * height];
+		offsets = new int[dx.length];
+		
+		for (int i = 0; i < dx.length; ++i) {
+			offsets[i] = dx[i] + dy[i] * width;
+		}
+		
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				int mask = 0;
+				
+				for (int i = 0; i < dx.length; ++i) {
+					if (isWalkable(x + dx[i], y + dy[i])) {
+						mask |= 1 << i;
+					}
+				}
+				
+				neighbours[getIndex(x, y)] = (byte)mask;
+			}
+		}
+	}
+	
+	private void buildComponents() {
+		int numCells = width * height;
+		int[] queue = new int[numCells];
+		components = new int[numCells];
+		numComponents = 0;
+		
+		for (int i = 0; i < numCells; ++i) {
+			components[i] = -1;
+		}
+		
+		// Flood fill from every walkable cell not labelled yet, same moves as the searches
+		for (int i = 0; i < numCells; ++i) {
+			if (!walkable[i] || components[i] != -1) {
+				continue;
+			}
+			
+			int head = 0;
+			int tail = 0;
+			components[i] = numComponents;
+			queue[tail++] = i;
+			
+			while (head < tail) {
+				int current = queue[head++];
+				int mask = getNeighbours(current);
+				
+				for (int d = 0; d < dx.length; ++d) {
+					int neighbour = current + offsets[d];
+					
+					if ((mask & (1 << d)) != 0 && components[neighbour] == -1) {
+						components[neighbour] = numComponents;
+						queue[tail++] = neighbour;
+					}
+				}
+			}
+			
+			++numComponents;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.siondream.ld26;
+
+/**
+ * Binary min heap of integer node ids keyed by float values.
+ *
+ * Every node knows its slot in the heap so its key can be decreased in place.
+ * All the storage is allocated up front for a fixed number of node ids. Nodes with
+ * the same value are ordered by an optional second value.
+ */
+public class NodeHeap {
+	
+	private int[] nodes;
+	private int[] slots;
+	private float[] values;
+	private float[] ties;
+	private int size;
+	
+	public NodeHeap(int capacity) {
+		nodes = new int[capacity];
+		slots = new int[capacity];
+		values = new float[capacity];
+		ties = new float[capacity];
+		size = 0;
+		
+		for (int i = 0; i < capacity; ++i) {
+			slots[i] = -1;
+		}
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public boolean contains(int node) {
+		return slots[node] != -1;
+	}
+	
+	public float getValue(int node) {
+		return values[node];
+	}
+	
+	public float getTie(int node) {
+		return ties[node];
+	}
+	
+	public void clear() {
+		for (int i = 0; i < size; ++i) {
+			slots[nodes[i]] = -1;
+		}
+		
+		size = 0;
+	}
+	
+	/**
+	 * Inserts the node or moves it to its new position if it was already queued
+	 */
+	public void setValue(int node, float value) {
+		setValue(node, value, 0.0f);
+	}
+	
+	/**
+	 * @param tie breaks ties between nodes with the same value, lowest first
+	 */
+	public void setValue(int node, float value, float tie) {
+		int slot = slots[node];
+		
+		if (slot == -1) {
+			values[node] = value;
+			ties[node] = tie;
+			nodes[size] = node;
+			slots[node] = size;
+			up(size++);
+			return;
+		}
+		
+		boolean decreased = value < values[node] || (value == values[node] && tie < ties[node]);
+		values[node] = value;
+		ties[node] = tie;
+		
+		if (decreased) {
+			up(slot);
+		}
+		else {
+			down(slot);
+		}
+	}
+	
+	public void remove(int node) {
+		int slot = slots[node];
+		
+		if (slot == -1) {
+			return;
+		}
+		
+		slots[node] = -1;
+		
+		if (--size > slot) {
+			int last = nodes[size];
+			nodes[slot] = last;
+			slots[last] = slot;
+			up(slot);
+			down(slots[last]);
+		}
+	}
+	
+	public int peek() {
+		if (size == 0) throw new IllegalStateException("The heap is empty.");
+		return nodes[0];
+	}
+	
+	public int pop() {
+		if (size == 0) throw new IllegalStateException("The heap is empty.");
+		
+		int popped = nodes[0];
+		slots[popped] = -1;
+		
+		if (--size > 0) {
+			nodes[0] = nodes[size];
+			slots[nodes[0]] = 0;
+			down(0);
+		}
+		
+		return popped;
+	}
+	
+	private void up(int slot) {
+		int node = nodes[slot];
+		
+		while (slot > 0) {
+			int parentSlot = (slot - 1) >> 1;
+			int parent = nodes[parentSlot];
+			
+			if (!less(node, parent)) {
+				break;
+			}
+			
+			nodes[slot] = parent;
+			slots[parent] = slot;
+			slot = parentSlot;
+		}
+		
+		nodes[slot] = node;
+		slots[node] = slot;
+	}
+	
+	private void down(int slot) {
+		int node = nodes[slot];
+		
+		while (true) {
+			int childSlot = 1 + (slot << 1);
+			
+			if (childSlot >= size) {
+				break;
+			}
+			
+			if (childSlot + 1 < size && less(nodes[childSlot + 1], nodes[childSlot])) {
+				++childSlot;
+			}
+			
+			int child = nodes[childSlot];
+			
+			if (!less(child, node)) {
+				break;
+			}
+			
+			nodes[slot] = child;
+			slots[child] = slot;
+			slot = childSlot;
+		}
+		
+		nodes[slot] = node;
+		slots[node] = slot;
+	}
+	
+	private boolean less(int a, int b) {
+		return values[a] < values[b] || (values[a] == values[b] && ties[a] < ties[b]);
+	}
+}
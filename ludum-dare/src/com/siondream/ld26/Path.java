@@ -0,0 +1,80 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.math.Vector2;
+
+public class Path {
+	
+	private Vector2[] points;
+	private int size;
+	
+	public Path() {
+		this(16);
+	}
+	
+	public Path(int capacity) {
+		points = new Vector2[capacity];
+		size = 0;
+		
+		for (int i = 0; i < capacity; ++i) {
+			points[i] = new Vector2();
+		}
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	public Vector2 get(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException(String.valueOf(index));
+		return points[index];
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	/**
+	 * Drops the waypoints from size onwards
+	 */
+	public void truncate(int size) {
+		if (size < this.size) {
+			this.size = Math.max(size, 0);
+		}
+	}
+	
+	public void add(float x, float y) {
+		if (size == points.length) {
+			grow(size * 2);
+		}
+		
+		points[size++].set(x, y);
+	}
+	
+	public void set(Path other) {
+		clear();
+		
+		for (int i = 0; i < other.size; ++i) {
+			Vector2 point = other.points[i];
+			add(point.x, point.y);
+		}
+	}
+	
+	public void reverse() {
+		for (int i = 0, j = size - 1; i < j; ++i, --j) {
+			Vector2 point = points[i];
+			points[i] = points[j];
+			points[j] = point;
+		}
+	}
+	
+	private void grow(int capacity) {
+		Vector2[] newPoints = new Vector2[Math.max(capacity, 1)];
+		System.arraycopy(points, 0, newPoints, 0, points.length);
+		
+		for (int i = points.length; i < newPoints.length; ++i) {
+			newPoints[i] = new Vector2();
+		}
+		
+		points = newPoints;
+	}
+}
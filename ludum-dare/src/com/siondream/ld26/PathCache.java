@@ -0,0 +1,198 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Recently found paths keyed by origin and destination cell.
+ *
+ * Holds a fixed number of entries, the least recently used one is replaced when it
+ * is full and entries older than the time to live are ignored. Besides identical
+ * queries it answers those that start somewhere along a cached path and go to the
+ * same destination, the rest of that path is still valid.
+ *
+ * Paths are stored as the cells of their waypoints, which are always cell centres.
+ */
+public class PathCache {
+	
+	private NavGrid grid;
+	private long ttl;
+	private LongMap<Entry> entries;
+	private Entry[] all;
+	private Entry first;
+	private Entry last;
+	private int hits;
+	private int misses;
+	
+	/**
+	 * @param capacity maximum number of paths
+	 * @param ttl milliseconds a path is served for after it was found
+	 */
+	public PathCache(int capacity, long ttl) {
+		this.ttl = ttl;
+		entries = new LongMap<Entry>(capacity);
+		all = new Entry[capacity];
+		
+		for (int i = 0; i < capacity; ++i) {
+			all[i] = new Entry();
+			append(all[i]);
+		}
+		
+		hits = 0;
+		misses = 0;
+	}
+	
+	/**
+	 * Drops every path, they are only valid for the grid they were found on
+	 */
+	public void setGrid(NavGrid grid) {
+		this.grid = grid;
+		clear();
+	}
+	
+	public void clear() {
+		entries.clear();
+		
+		for (int i = 0; i < all.length; ++i) {
+			all[i].key = -1;
+			all[i].cells.clear();
+		}
+	}
+	
+	public int getHitCount() {
+		return hits;
+	}
+	
+	public int getMissCount() {
+		return misses;
+	}
+	
+	/**
+	 * Writes the cached path from origin to destination into path
+	 *
+	 * @return false if there is none
+	 */
+	public boolean get(int origin, int destination, Path path) {
+		long now = TimeUtils.millis();
+		Entry entry = entries.get(getKey(origin, destination));
+		int start = 0;
+		
+		if (entry == null || now - entry.time > ttl) {
+			entry = null;
+			
+			// Sub path of a cached one with the same destination
+			for (Entry candidate = first; candidate != null && candidate.key != -1; candidate = candidate.next) {
+				if (candidate.destination == destination && now - candidate.time <= ttl) {
+					start = candidate.cells.indexOf(origin);
+					
+					if (start != -1) {
+						entry = candidate;
+						break;
+					}
+				}
+			}
+		}
+		
+		if (entry == null) {
+			++misses;
+			return false;
+		}
+		
+		++hits;
+		path.clear();
+		
+		for (int i = start; i < entry.cells.size; ++i) {
+			int cell = entry.cells.get(i);
+			path.add(grid.getCentreX(grid.getX(cell)), grid.getCentreY(grid.getY(cell)));
+		}
+		
+		touch(entry);
+		return true;
+	}
+	
+	public void put(int origin, int destination, Path path) {
+		long key = getKey(origin, destination);
+		Entry entry = entries.get(key);
+		
+		if (entry == null) {
+			// Least recently used slot, empty ones are always at the back
+			entry = last;
+			
+			if (entry.key != -1) {
+				entries.remove(entry.key);
+			}
+			
+			entry.key = key;
+			entries.put(key, entry);
+		}
+		
+		entry.destination = destination;
+		entry.time = TimeUtils.millis();
+		entry.cells.clear();
+		
+		for (int i = 0; i < path.getSize(); ++i) {
+			entry.cells.add(grid.getIndex(grid.getCellX(path.get(i).x), grid.getCellY(path.get(i).y)));
+		}
+		
+		touch(entry);
+	}
+	
+	private void touch(Entry entry) {
+		if (entry != first) {
+			remove(entry);
+			entry.next = first;
+			first.previous = entry;
+			first = entry;
+		}
+	}
+	
+	private void append(Entry entry) {
+		entry.previous = last;
+		entry.next = null;
+		
+		if (last != null) {
+			last.next = entry;
+		}
+		else {
+			first = entry;
+		}
+		
+		last = entry;
+	}
+	
+	private void remove(Entry entry) {
+		if (entry.previous != null) {
+			entry.previous.next = entry.next;
+		}
+		else {
+			first = entry.next;
+		}
+		
+		if (entry.next != null) {
+			entry.next.previous = entry.previous;
+		}
+		else {
+			last = entry.previous;
+		}
+		
+		entry.previous = null;
+		entry.next = null;
+	}
+	
+	/**
+	 * @return key identifying the pair of cells
+	 */
+	public static long getKey(int origin, int destination) {
+		return ((long)origin << 32) | (destination & 0xffffffffL);
+	}
+	
+	private static class Entry {
+		public long key = -1;
+		public int destination = -1;
+		public long time = 0;
+		public IntArray cells = new IntArray();
+		public Entry previous = null;
+		public Entry next = null;
+	}
+}
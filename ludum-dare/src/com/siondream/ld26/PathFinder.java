@@ -1,15 +1,11 @@
 package com.siondream.ld26;
 
-import java.util.Iterator;
-
-import com.badlogic.gdx.maps.tiled.TiledMap;
-import com.badlogic.gdx.maps.tiled.TiledMapTile;
-import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
-import com.badlogic.gdx.maps.tiled.TiledMapTileLayer.Cell;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.maps.tiled.TiledMap;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.BinaryHeap;
 import com.badlogic.gdx.utils.Logger;
+import com.badlogic.gdx.utils.LongMap;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.Pool;
 import com.badlogic.gdx.utils.Pool.Poolable;
@@ -25,291 +21,795 @@ public class PathFinder {
 		NoPath,
 	}
 	
+	public enum Algorithm {
+		AStar,
+		JumpPoint,
+		Hierarchical,
+		Incremental,
+		ThetaStar,
+	}
+	
 	public interface Callback {
-		public void onPathRequest(long id, ResultCode code, Array<Vector2> path);
+		public void onPathRequest(long id, ResultCode code, Path path);
 	}
 	
 	private static long nextRequestID = 1;
 	private static final String TAG = "PathFinder";
 	
 	private Logger logger;
-	private ObjectMap<TiledMapTile, Boolean> walkability;
-	private TiledMapTileLayer tiles;
-	private NavCell[][] navCells;
-	private Array<Request> requests;
+	private NavGrid grid;
+	private PathSearch template;
+	private PathSearch plannerTemplate;
+	private FlowField flowField;
+	private Algorithm algorithm;
 	private RequestPool requestPool;
+	private Path path;
+	private PathCache cache;
+	private ObjectMap<Callback, Planner> planners;
+	private Array<Callback> plannerOrder;
+	private boolean smoothing;
+	
+	// Scheduling, pending requests are served closest to the focus first
+	private BinaryHeap<Request> queue;
+	private LongMap<Request> requests;
+	private ObjectMap<Callback, Request> latest;
+	private Array<Request> active;
+	private Array<Request> waiting;
+	private Array<Request> reorder;
+	private int nextActive;
+	private int nextSequence;
+	private float focusX;
+	private float focusY;
+	private float rankedFocusX;
+	private float rankedFocusY;
+	private boolean hasFocus;
 	
-	private NavCell initialNavCell;
-	private NavCell destinationNavCell;
-	private Array<NavCell> open;
-	private Array<NavCell> closed;
-	private Array<NavCell> neighbours;
-	private ObjectMap<NavCell, NavCell> paths;
-	private Array<Vector2> path;
+	// Asynchronous mode, everything below is shared with the worker threads
+	private TaskExecutor executor;
+	private boolean canRunAsync;
+	private boolean async;
+	private Array<Request> completed;
+	private Array<Request> delivered;
+	private LongMap<Request> inFlight;
+	private int running;
+	private Array<PathSearch> searches;
+	private int generation;
 	
 	public PathFinder() {
+		this(new SerialExecutor());
+	}
+	
+	/**
+	 * @param executor runs the searches when Globals.pathFinderAsync is set and it has
+	 * worker threads, otherwise they run in update() under the frame budget
+	 */
+	public PathFinder(TaskExecutor executor) {
 		logger = new Logger(TAG, Globals.debugLevel);
-		walkability = new ObjectMap<TiledMapTile, Boolean>();
-		requests = new Array<Request>();
 		requestPool = new RequestPool();
-		open = new Array<NavCell>();
-		closed = new Array<NavCell>();
-		neighbours = new Array<NavCell>();
-		path = new Array<Vector2>();
-		paths = new ObjectMap<NavCell, NavCell>();
+		path = new Path();
+		cache = new PathCache(Globals.pathCacheSize, Globals.pathCacheTTLMs);
+		planners = new ObjectMap<Callback, Planner>();
+		plannerOrder = new Array<Callback>();
+		algorithm = Globals.pathFinderAlgorithm;
+		smoothing = Globals.pathFinderSmoothing;
+		
+		queue = new BinaryHeap<Request>();
+		requests = new LongMap<Request>();
+		latest = new ObjectMap<Callback, Request>();
+		active = new Array<Request>();
+		waiting = new Array<Request>();
+		reorder = new Array<Request>();
+		nextActive = 0;
+		nextSequence = 0;
+		hasFocus = false;
+		
+		this.executor = executor;
+		canRunAsync = Globals.pathFinderAsync && executor.getParallelism() > 0;
+		async = canRunAsync && algorithm != Algorithm.Incremental;
+		completed = new Array<Request>();
+		delivered = new Array<Request>();
+		inFlight = new LongMap<Request>();
+		running = 0;
+		searches = new Array<PathSearch>();
+		generation = 0;
 	}
 	
 	public void init(TiledMap map) {
-		walkability.clear();
-		
-		tiles = (TiledMapTileLayer)map.getLayers().get(Globals.backgroundLayer);
+		// Requests from the previous level are not answered, the ones in the workers
+		// are dropped when they come back because the grid changed
+		while (queue.size > 0) {
+			requestPool.free(queue.pop());
+		}
 		
-		Iterator<TiledMapTile> it = map.getTileSets().getTileSet(Globals.tileset).iterator();
-		while(it.hasNext()) {
-			TiledMapTile tile = it.next();
-			boolean walkable = Boolean.parseBoolean(tile.getProperties().get("walkable", "false", String.class));
-			walkability.put(tile, walkable);
+		for (int i = 0; i < active.size; ++i) {
+			requestPool.free(active.get(i));
 		}
 		
-		navCells = new NavCell[tiles.getWidth()][tiles.getHeight()];
+		active.clear();
+		requests.clear();
+		latest.clear();
+		inFlight.clear();
+		grid = new NavGrid(map);
+		flowField = new FlowField(grid);
+		cache.setGrid(grid);
 		
-		for (int x = 0; x < tiles.getWidth(); ++x) {
-			for (int y = 0; y < tiles.getHeight(); ++y) {
-				navCells[x][y] = new NavCell(tiles.getCell(x, y), x, y);
+		// Levels can pick their own search algorithm
+		String name = map.getProperties().get(Globals.pathFinderAlgorithmProperty, String.class);
+		Algorithm levelAlgorithm = Globals.pathFinderAlgorithm;
+		
+		if (name != null) {
+			try {
+				levelAlgorithm = Algorithm.valueOf(name);
+			}
+			catch (IllegalArgumentException e) {
+				logger.error("invalid path finding algorithm " + name);
 			}
 		}
+		
+		setAlgorithm(levelAlgorithm);
+	}
+	
+	/**
+	 * @return walkability of the current map, baked when it was set
+	 */
+	public NavGrid getGrid() {
+		return grid;
+	}
+	
+	/**
+	 * @return field towards the target set by the game, shared by all the enemies
+	 */
+	public FlowField getFlowField() {
+		return flowField;
+	}
+	
+	/**
+	 * @return recent paths, exposed for its hit and miss counters
+	 */
+	public PathCache getCache() {
+		return cache;
+	}
+	
+	public Algorithm getAlgorithm() {
+		return algorithm;
+	}
+	
+	public boolean isSmoothing() {
+		return smoothing;
+	}
+	
+	/**
+	 * Found paths skip the waypoints that can be seen from the previous one kept,
+	 * otherwise there is one per cell
+	 */
+	public void setSmoothing(boolean smoothing) {
+		this.smoothing = smoothing;
+	}
+	
+	public boolean isAsync() {
+		return async;
+	}
+	
+	/**
+	 * Requests are served in order of distance from their origin to (x, y), usually the
+	 * player, instead of in the order they were made. The queued ones are ranked again
+	 * when the focus moves more than Globals.pathFinderFocusRefreshDistance.
+	 */
+	public void setFocus(float x, float y) {
+		float dx = x - rankedFocusX;
+		float dy = y - rankedFocusY;
+		float refresh = Globals.pathFinderFocusRefreshDistance;
+		focusX = x;
+		focusY = y;
+		
+		if (!hasFocus || dx * dx + dy * dy > refresh * refresh) {
+			hasFocus = true;
+			rankedFocusX = x;
+			rankedFocusY = y;
+			reorderQueue();
+		}
+	}
+	
+	/**
+	 * @return number of requests that have not been answered yet
+	 */
+	public int getNumPending() {
+		return requests.size;
+	}
+	
+	/**
+	 * Incremental planners keep state for each callback, so they run on the game thread
+	 * even if there are workers. Each one takes memory for the whole grid, there are
+	 * at most Globals.pathFinderMaxPlanners and the callbacks without one are served
+	 * with plain A*.
+	 */
+	public void setAlgorithm(Algorithm algorithm) {
+		this.algorithm = algorithm;
+		async = canRunAsync && algorithm != Algorithm.Incremental;
+		planners.clear();
+		plannerOrder.clear();
+		plannerTemplate = null;
+		
+		// Paths from the previous algorithm would be served until they expire, the
+		// searches still running with it do not store theirs
+		cache.clear();
+		
+		if (grid == null) {
+			return;
+		}
+		
+		// Built here so level loading pays for any precomputation, the searches
+		// actually used are copies of it
+		template = createSearch(grid, algorithm);
+		
+		if (algorithm == Algorithm.Incremental) {
+			plannerTemplate = template;
+			template = createSearch(grid, Algorithm.AStar);
+		}
+		
+		// Searches for the previous grid or algorithm are not reused
+		synchronized (searches) {
+			searches.clear();
+			searches.add(template);
+			++generation;
+		}
 	}
 	
 	public void update() {
-		long beginTime = System.currentTimeMillis();
-		long endTime = beginTime + Globals.pathFinderBudgetMs;
-		int pathsProcessed= 0;
-		
-		while (requests.size > 0 && System.currentTimeMillis() < endTime) {
-			processRequest();
-			requestPool.free(requests.get(0));
-			requests.removeIndex(0);
+		// Answers from the workers are always delivered, even after switching to a
+		// synchronous algorithm
+		deliverCompleted();
+		
+		if (async) {
+			submitRequests();
+			return;
+		}
+		
+		// Searches run a slice at a time taking turns, a long one resumes next frame
+		// where it left off instead of stalling the ones behind it
+		long endTime = System.nanoTime() + Globals.pathFinderBudgetMs * 1000000L;
+		int budget = Globals.pathFinderBudgetExpansions;
+		int expansions = 0;
+		int pathsProcessed = 0;
+		
+		while (expansions < budget && System.nanoTime() < endTime) {
+			if (active.size < Globals.pathFinderMaxSearches && queue.size > 0) {
+				Request request = queue.pop();
+				
+				if (request.cancelled) {
+					requestPool.free(request);
+					continue;
+				}
+				
+				ResultCode code = validate(grid, request);
+				Path result = request.path != null? request.path : path;
+				
+				if (code == null && cache.get(request.origin, request.destination, result)) {
+					code = ResultCode.PathFound;
+				}
+				
+				if (code != null) {
+					finish(request, code, code == ResultCode.PathFound? result : null);
+					++pathsProcessed;
+					continue;
+				}
+				
+				request.grid = grid;
+				request.template = template;
+				request.generation = generation;
+				request.search = plannerTemplate != null? obtainPlanner(request) : obtainSearch(request);
+				request.search.start(request.origin, request.destination);
+				active.add(request);
+				continue;
+			}
+			
+			if (active.size == 0) {
+				break;
+			}
+			
+			if (nextActive >= active.size) {
+				nextActive = 0;
+			}
+			
+			Request request = active.get(nextActive);
+			PathSearch search = request.search;
+			int expanded = search.getExpandedCount();
+			PathSearch.State state = search.resume(Math.min(Globals.pathFinderSliceExpansions, budget - expansions));
+			expansions += search.getExpandedCount() - expanded;
+			
+			if (state == PathSearch.State.Searching) {
+				++nextActive;
+				continue;
+			}
+			
+			Path result = null;
+			
+			if (state == PathSearch.State.Found) {
+				result = request.path != null? request.path : path;
+				search.getPath(result);
+				
+				if (request.generation == generation) {
+					cache.put(request.origin, request.destination, result);
+				}
+			}
+			
+			freeSearch(request, search);
+			request.search = null;
+			active.removeIndex(nextActive);
+			finish(request, result != null? ResultCode.PathFound : ResultCode.NoPath, result);
 			++pathsProcessed;
 		}
 		
 		if (pathsProcessed > 0) {
 			int total = requests.size + pathsProcessed;
-			logger.info("" + pathsProcessed + " / " + total + " paths processed");
+			logger.info("" + pathsProcessed + " / " + total + " paths processed, " + expansions + " nodes expanded, " +
+						cache.getHitCount() + " cache hits, " + cache.getMissCount() + " misses");
 		}
-		
 	}
 	
 	public long requestPath(float x0, float y0, float x1, float y1, Callback callback) {
+		return requestPath(x0, y0, x1, y1, null, callback);
+	}
+	
+	/**
+	 * Queues a path request, a request from the same callback that has not been
+	 * answered yet is cancelled as this one supersedes it
+	 *
+	 * @param path buffer owned by the caller the waypoints are written into, if null
+	 * the callback gets a shared buffer that is only valid during the call.
+	 */
+	public long requestPath(float x0, float y0, float x1, float y1, Path path, Callback callback) {
+		Request previous = latest.get(callback);
+		
+		if (previous != null) {
+			cancel(previous);
+		}
+		
 		Request request = requestPool.obtain();
 		request.id = getNextRequestID();
 		request.x0 = x0;
 		request.y0 = y0;
 		request.x1 = x1;
 		request.y1 = y1;
+		request.path = path;
 		request.callback = callback;
-		requests.add(request);
+		
+		// Sequence numbers are the priority without a focus, floats only count exactly
+		// up to 2^24
+		if (nextSequence >= 1 << 24) {
+			reorderQueue();
+		}
+		
+		request.sequence = nextSequence++;
+		requests.put(request.id, request);
+		latest.put(callback, request);
+		
+		queue.add(request);
+		queue.setValue(request, getPriority(request));
 		return request.id;
 	}
 	
-	private Cell getCellAt(float x, float y) {
-		float pixelX = x * Globals.metresToPixels;
-		float pixelY = y * Globals.metresToPixels;
-		
-		int cellX = (int)pixelX / (int)tiles.getTileWidth();
-		int cellY = (int)pixelY / (int)tiles.getTileHeight();
-		
-		return tiles.getCell(cellX, cellY);
+	/**
+	 * Drops any state kept for callback, to be called when it will not request paths
+	 * any more. Pending requests are not cancelled.
+	 */
+	public void forget(Callback callback) {
+		if (planners.remove(callback) != null) {
+			plannerOrder.removeValue(callback, true);
+		}
 	}
 	
-	private NavCell getNavCellAt(float x, float y) {
-		float pixelX = x * Globals.metresToPixels;
-		float pixelY = y * Globals.metresToPixels;
+	/**
+	 * Cancels a request so its callback is never called
+	 *
+	 * @return false if the request had already been answered or cancelled
+	 */
+	public boolean cancel(long id) {
+		Request request = requests.get(id);
 		
-		int cellx = (int)pixelX / (int)tiles.getTileWidth();
-		int celly = (int)pixelY / (int)tiles.getTileHeight();
-		return getNavCellAt(cellx, celly);
+		if (request == null) {
+			return false;
+		}
+		
+		cancel(request);
+		return true;
 	}
 	
-	private NavCell getNavCellAt(int x, int y) {
-		if (x < 0 || x >= tiles.getWidth()) return null;
-		if (y < 0 || y >= tiles.getHeight()) return null;
-		return navCells[x][y];
+	private void cancel(Request request) {
+		requests.remove(request.id);
+		
+		if (latest.get(request.callback) == request) {
+			latest.remove(request.callback);
+		}
+		
+		request.cancelled = true;
+		
+		// Queued requests and the ones in the workers are freed when they come out
+		if (request.search != null) {
+			freeSearch(request, request.search);
+			active.removeValue(request, true);
+			requestPool.free(request);
+		}
 	}
 	
-	private TiledMapTile getTileAt(float x, float y) {
-		Cell cell = getCellAt(x, y);
-		return cell != null? cell.getTile() : null;
+	private void finish(Request request, ResultCode code, Path result) {
+		requests.remove(request.id);
+		
+		if (latest.get(request.callback) == request) {
+			latest.remove(request.callback);
+		}
+		
+		// Incremental planners only reuse their work while requesters stay on their cells
+		if (smoothing && result != null && !request.planned) {
+			smooth(result);
+		}
+		
+		// The callback may request a new path, the request is no longer the latest one
+		request.callback.onPathRequest(request.id, code, result);
+		requestPool.free(request);
 	}
 	
-	private void processRequest() {
-		Request request = requests.get(0);
-		
-		TiledMapTile initialTile = getTileAt(request.x0, request.y0);
+	/**
+	 * String pulling, keeps a waypoint only when the next one cannot be seen from the
+	 * last waypoint kept
+	 */
+	private void smooth(Path path) {
+		int size = path.getSize();
 		
-		if (initialTile == null) {
-			request.callback.onPathRequest(request.id, ResultCode.OriginOutOfMap, null);
+		if (size < 3) {
 			return;
 		}
 		
-		TiledMapTile destinationTile = getTileAt(request.x1, request.y1);
+		int kept = 1;
 		
-		if (destinationTile == null) {
-			request.callback.onPathRequest(request.id, ResultCode.DestinationOutOfMap, null);
-			return;
+		for (int i = 2; i < size; ++i) {
+			Vector2 anchor = path.get(kept - 1);
+			Vector2 point = path.get(i);
+			
+			if (!grid.hasLineOfSight(grid.getCellX(anchor.x), grid.getCellY(anchor.y),
+									 grid.getCellX(point.x), grid.getCellY(point.y))) {
+				path.get(kept++).set(path.get(i - 1));
+			}
 		}
 		
-		if (!walkability.get(initialTile)) {
-			request.callback.onPathRequest(request.id, ResultCode.OriginNonWalkable, null);
-			return;
+		path.get(kept++).set(path.get(size - 1));
+		path.truncate(kept);
+	}
+	
+	/**
+	 * Requests at the same distance from the focus come out in any order, without a
+	 * focus they come out in the order they were made
+	 */
+	private float getPriority(Request request) {
+		if (!hasFocus) {
+			return request.sequence;
 		}
 		
-		if (!walkability.get(destinationTile)) {
-			request.callback.onPathRequest(request.id, ResultCode.DestinationNonWalkable, null);
-			return;
+		float x = request.x0 - focusX;
+		float y = request.y0 - focusY;
+		return x * x + y * y;
+	}
+	
+	/**
+	 * Ranks the queued requests again, their sequence numbers are handed out again in
+	 * the order they had so they stay small
+	 */
+	private void reorderQueue() {
+		while (queue.size > 0) {
+			reorder.add(queue.pop());
 		}
 		
-		initialNavCell = getNavCellAt(request.x0, request.y0);
-		destinationNavCell = getNavCellAt(request.x1, request.y1);
+		nextSequence = 0;
+		
+		for (int i = 0; i < reorder.size; ++i) {
+			Request request = reorder.get(i);
+			request.sequence = nextSequence++;
+			queue.add(request);
+			queue.setValue(request, getPriority(request));
+		}
 		
-		open.clear();
-		open.add(initialNavCell);
-		closed.clear();
-		paths.clear();
+		reorder.clear();
+	}
+	
+	private void deliverCompleted() {
+		synchronized (completed) {
+			delivered.addAll(completed);
+			completed.clear();
+		}
 		
-		initialNavCell.g = 0;
-		initialNavCell.h = h(initialNavCell);
+		running -= delivered.size;
 		
-		while (open.size > 0) {
-			NavCell current = getBestCandidate();
+		for (int i = 0; i < delivered.size; ++i) {
+			Request request = delivered.get(i);
 			
-			if (isGoal(current)) {
-				path.clear();
-				recoverPath(current);
-				request.callback.onPathRequest(request.id, ResultCode.PathFound, path);
-				return;
+			if (request.grid != grid) {
+				requestPool.free(request);
+				continue;
 			}
 			
-			open.removeValue(current, false);
-			closed.add(current);
+			inFlight.remove(PathCache.getKey(request.origin, request.destination));
 			
-			generateNeighbours(current);
+			if (request.code == ResultCode.PathFound && request.generation == generation) {
+				cache.put(request.origin, request.destination, request.result);
+			}
 			
-			for (NavCell neighbour : neighbours) {
-				float nextG = current.g + 1;
-				
-				if (closed.contains(neighbour, false) && nextG >= neighbour.g) {
-					continue;
+			if (request.cancelled) {
+				requestPool.free(request);
+				continue;
+			}
+			
+			Path result = null;
+			
+			if (request.code == ResultCode.PathFound) {
+				if (request.path != null) {
+					request.path.set(request.result);
+					result = request.path;
 				}
-				
-				int indexInOpen = open.indexOf(neighbour, false);
-				
-				if (indexInOpen == -1 || nextG < neighbour.g) {
-					paths.put(neighbour, current);
-					neighbour.g = nextG;
-					neighbour.h = h(neighbour);
-					
-					if (indexInOpen == -1) {
-						open.add(neighbour);
-					}
+				else {
+					result = request.result;
 				}
 			}
+			
+			finish(request, request.code, result);
+		}
+		
+		if (delivered.size > 0) {
+			logger.info("" + delivered.size + " paths delivered, " + cache.getHitCount() + " cache hits, " +
+						cache.getMissCount() + " misses");
 		}
 		
-		request.callback.onPathRequest(request.id, ResultCode.NoPath, null);
+		delivered.clear();
 	}
 	
-	private void recoverPath(NavCell current) {
-		NavCell cameFrom = paths.get(current);
+	private void submitRequests() {
+		// Answers that do not need a search are given straight away and requests for a
+		// path that is already being searched wait for it to reach the cache. Callbacks
+		// may queue new requests, those wait for the next update.
+		int count = queue.size;
+		
+		for (int i = 0; i < count; ++i) {
+			// The workers only get a few searches at a time, the rest stay queued in
+			// priority order and nothing is ever searched on the game thread
+			if (running >= Globals.pathFinderMaxAsyncSearches) {
+				break;
+			}
+			
+			Request request = queue.pop();
+			
+			if (request.cancelled) {
+				requestPool.free(request);
+				continue;
+			}
+			
+			ResultCode code = validate(grid, request);
+			Path result = request.path != null? request.path : path;
+			long key = PathCache.getKey(request.origin, request.destination);
+			
+			if (code == null && inFlight.containsKey(key)) {
+				waiting.add(request);
+				continue;
+			}
+			
+			if (code == null && cache.get(request.origin, request.destination, result)) {
+				code = ResultCode.PathFound;
+			}
+			
+			if (code != null) {
+				finish(request, code, code == ResultCode.PathFound? result : null);
+				continue;
+			}
+			
+			request.grid = grid;
+			request.template = template;
+			request.generation = generation;
+			inFlight.put(key, request);
+			++running;
+			executor.execute(request);
+		}
 		
-		if (cameFrom != null) {
-			recoverPath(cameFrom);
+		for (int i = 0; i < waiting.size; ++i) {
+			queue.add(waiting.get(i));
 		}
 		
-		float width = tiles.getTileWidth();
-		float height = tiles.getTileHeight();
-		float x = (current.x * width + width * 0.5f) * Globals.pixelsToMetres;
-		float y = (current.y * height + height * 0.5f) * Globals.pixelsToMetres;
-		path.add(new Vector2(x, y));
+		waiting.clear();
 	}
 	
-	private void generateNeighbours(NavCell current) {
-		neighbours.clear();
-		NavCell neighbourA = getNavCellAt(current.x - 1, current.y - 1);
-		NavCell neighbourB = getNavCellAt(current.x, current.y - 1);
-		NavCell neighbourC = getNavCellAt(current.x + 1, current.y - 1);
-		NavCell neighbourD = getNavCellAt(current.x - 1, current.y);
-		NavCell neighbourE = getNavCellAt(current.x + 1, current.y);
-		NavCell neighbourF = getNavCellAt(current.x - 1, current.y + 1);
-		NavCell neighbourG = getNavCellAt(current.x, current.y + 1);
-		NavCell neighbourH = getNavCellAt(current.x + 1, current.y + 1);
+	/**
+	 * Only called on the game thread, planners stay with their callback when the
+	 * request is done. Once there are Globals.pathFinderMaxPlanners of them a new
+	 * callback takes over the one used least recently if it has not been used for
+	 * Globals.pathFinderPlannerIdleMs, otherwise the request gets a plain A* search.
+	 * Taking over busy planners would only make them start over all the time.
+	 */
+	private PathSearch obtainPlanner(Request request) {
+		Callback callback = request.callback;
+		Planner planner = planners.get(callback);
+		long now = System.currentTimeMillis();
 		
-		if (neighbourA != null && walkability.get(neighbourA.cell.getTile())) neighbours.add(neighbourA);
-		if (neighbourB != null && walkability.get(neighbourB.cell.getTile())) neighbours.add(neighbourB);
-		if (neighbourC != null && walkability.get(neighbourC.cell.getTile())) neighbours.add(neighbourC);
-		if (neighbourD != null && walkability.get(neighbourD.cell.getTile())) neighbours.add(neighbourD);
-		if (neighbourE != null && walkability.get(neighbourE.cell.getTile())) neighbours.add(neighbourE);
-		if (neighbourF != null && walkability.get(neighbourF.cell.getTile())) neighbours.add(neighbourF);
-		if (neighbourG != null && walkability.get(neighbourG.cell.getTile())) neighbours.add(neighbourG);
-		if (neighbourH != null && walkability.get(neighbourH.cell.getTile())) neighbours.add(neighbourH);
+		if (planner != null) {
+			plannerOrder.removeValue(callback, true);
+		}
+		else if (planners.size < Globals.pathFinderMaxPlanners) {
+			planner = new Planner(plannerTemplate.copy());
+		}
+		else {
+			Callback owner = plannerOrder.first();
+			Planner oldest = planners.get(owner);
+			
+			if (now - oldest.lastUsed < Globals.pathFinderPlannerIdleMs || isSearching(oldest.search)) {
+				return obtainSearch(request);
+			}
+			
+			// Its state is still valid, the new owner restarts it unless it happens
+			// to be on the previous path
+			planners.remove(owner);
+			plannerOrder.removeIndex(0);
+			planner = oldest;
+		}
+		
+		planner.lastUsed = now;
+		planners.put(callback, planner);
+		plannerOrder.add(callback);
+		request.planned = true;
+		return planner.search;
 	}
 	
-	private NavCell getBestCandidate() {
-		NavCell bestCandidate = null;
-		float lowestF = Float.POSITIVE_INFINITY;
-		
-		for (NavCell candidate : open) {
-			if (candidate.g + candidate.h < lowestF) {
-				bestCandidate = candidate;
-				lowestF = candidate.g + candidate.h;
+	private boolean isSearching(PathSearch search) {
+		for (int i = 0; i < active.size; ++i) {
+			if (active.get(i).search == search) {
+				return true;
 			}
 		}
 		
-		return bestCandidate;
+		return false;
 	}
 	
-	private boolean isGoal(NavCell node) {
-		return destinationNavCell.x == node.x && destinationNavCell.y == node.y;
+	private PathSearch obtainSearch(Request request) {
+		synchronized (searches) {
+			if (request.generation == generation && searches.size > 0) {
+				return searches.pop();
+			}
+		}
+		
+		return request.template.copy();
 	}
 	
-	private float h(NavCell node) {
-		return (destinationNavCell.x - node.x) * (destinationNavCell.x - node.x) +
-			   (destinationNavCell.y - node.y) * (destinationNavCell.y - node.y);
+	private void freeSearch(Request request, PathSearch search) {
+		if (request.planned) {
+			return;
+		}
+		
+		synchronized (searches) {
+			if (request.generation == generation) {
+				searches.add(search);
+			}
+		}
 	}
 	
-	private float g(NavCell node) {
-		return 0.0f;
+	private static PathSearch createSearch(NavGrid grid, Algorithm algorithm) {
+		switch (algorithm) {
+		case JumpPoint:
+			return new JumpPointSearch(grid);
+		case Hierarchical:
+			return new HierarchicalSearch(grid, Globals.pathFinderClusterSize);
+		case Incremental:
+			return new DStarLiteSearch(grid);
+		case ThetaStar:
+			return new ThetaStarSearch(grid);
+		default:
+			return new GridSearch(grid);
+		}
 	}
 	
-	private class NavCell extends BinaryHeap.Node {
-		public Cell cell;
-		public int x;
-		public int y;
-		public float g;
-		public float h;
+	/**
+	 * Checks both ends of the request and stores their cells in it, it only reads the
+	 * grid so it is safe to call from a worker thread
+	 *
+	 * @return reason why there cannot be a path or null if the search can start
+	 */
+	private static ResultCode validate(NavGrid grid, Request request) {
+		int originX = grid.getCellX(request.x0);
+		int originY = grid.getCellY(request.y0);
+		int destinationX = grid.getCellX(request.x1);
+		int destinationY = grid.getCellY(request.y1);
 		
-		public NavCell(Cell cell, int x, int y) {
-			super(0.0f);
-			this.cell = cell;
-			this.x = x;
-			this.y = y;
-			this.g = Float.POSITIVE_INFINITY;
-			this.h = Float.POSITIVE_INFINITY;
+		if (!grid.hasTile(originX, originY)) {
+			return ResultCode.OriginOutOfMap;
+		}
+		
+		if (!grid.hasTile(destinationX, destinationY)) {
+			return ResultCode.DestinationOutOfMap;
+		}
+		
+		if (!grid.isWalkable(originX, originY)) {
+			return ResultCode.OriginNonWalkable;
+		}
+		
+		if (!grid.isWalkable(destinationX, destinationY)) {
+			return ResultCode.DestinationNonWalkable;
+		}
+		
+		request.origin = grid.getIndex(originX, originY);
+		request.destination = grid.getIndex(destinationX, destinationY);
+		
+		// Different connected areas, searching would visit every cell of the origin's one
+		if (!grid.isConnected(request.origin, request.destination)) {
+			return ResultCode.NoPath;
 		}
+		
+		return null;
 	}
 	
-	private class Request implements Poolable {
+	private class Request extends BinaryHeap.Node implements Poolable, Runnable {
 		public long id = 0;
+		public int sequence = 0;
 		public float x0 = 0.0f;
 		public float y0 = 0.0f;
 		public float x1 = 0.0f;;
 		public float y1 = 0.0f;
+		public Path path = null;
 		public Callback callback = null;
+		public boolean cancelled = false;
+		public boolean planned = false;
+		
+		public int origin = -1;
+		public int destination = -1;
+		public NavGrid grid = null;
+		public PathSearch template = null;
+		public PathSearch search = null;
+		public int generation = 0;
+		
+		// Filled in by the worker thread
+		public ResultCode code = null;
+		public Path result = new Path();
+		
+		public Request() {
+			super(0.0f);
+		}
 		
 		@Override
 		public void reset() {
 			x0 = x1 = y0 = y1 = 0.0f;
 			id = 0;
+			sequence = 0;
+			path = null;
 			callback = null;
+			cancelled = false;
+			planned = false;
+			origin = destination = -1;
+			grid = null;
+			template = null;
+			search = null;
+			code = null;
+			result.clear();
+		}
+		
+		@Override
+		public void run() {
+			PathSearch search = obtainSearch(this);
+			
+			if (search.search(origin, destination)) {
+				search.getPath(result);
+				code = ResultCode.PathFound;
+			}
+			else {
+				code = ResultCode.NoPath;
+			}
+			
+			freeSearch(this, search);
+			
+			synchronized (completed) {
+				completed.add(this);
+			}
+		}
+	}
+	
+	private static class Planner {
+		public PathSearch search;
+		public long lastUsed = 0;
+		
+		public Planner(PathSearch search) {
+			this.search = search;
 		}
 	}
 	
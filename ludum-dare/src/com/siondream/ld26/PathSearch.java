@@ -0,0 +1,47 @@
+package com.siondream.ld26;
+
+/**
+ * Search strategy used by the PathFinder to resolve requests over the NavGrid.
+ */
+public interface PathSearch {
+	
+	public enum State {
+		Searching,
+		Found,
+		NotFound,
+	}
+	
+	/**
+	 * @return whether destination can be reached from origin, both cell indices
+	 */
+	public boolean search(int origin, int destination);
+	
+	/**
+	 * Sets up a search from origin to destination without expanding any node, so it
+	 * can be run a few nodes at a time with resume()
+	 */
+	public void start(int origin, int destination);
+	
+	/**
+	 * Carries on with the search started last
+	 *
+	 * @return Searching if it stopped after maxExpansions nodes without an answer
+	 */
+	public State resume(int maxExpansions);
+	
+	/**
+	 * Writes the waypoints of the last successful search into path, in world units
+	 */
+	public void getPath(Path path);
+	
+	/**
+	 * @return nodes expanded by the last search, for profiling
+	 */
+	public int getExpandedCount();
+	
+	/**
+	 * @return new search over the same grid with its own state, anything that is
+	 * read only, like precomputed data, is shared with this one
+	 */
+	public PathSearch copy();
+}
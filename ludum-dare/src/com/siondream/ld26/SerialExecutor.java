@@ -0,0 +1,30 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Runs every task straight away on the calling thread
+ */
+public class SerialExecutor implements TaskExecutor {
+	
+	@Override
+	public void execute(Runnable task) {
+		task.run();
+	}
+	
+	@Override
+	public void invokeAll(Array<? extends Runnable> tasks) {
+		for (int i = 0; i < tasks.size; ++i) {
+			tasks.get(i).run();
+		}
+	}
+	
+	@Override
+	public int getParallelism() {
+		return 0;
+	}
+	
+	@Override
+	public void dispose() {
+	}
+}
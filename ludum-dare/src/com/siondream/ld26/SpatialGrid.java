@@ -0,0 +1,141 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Uniform grid over the level bucketing entities by position, for neighbourhood
+ * queries.
+ *
+ * It is rebuilt from scratch once per tick with a counting sort, entities that
+ * share a cell end up next to each other in a flat array. Queries only read, so
+ * several can run at once as long as each one has its own result array. Entities
+ * outside the level are kept in the closest border cell.
+ */
+public class SpatialGrid<T extends Entity> {
+	
+	private float cellSize;
+	private int width;
+	private int height;
+	private int[] cellStart;
+	private int[] cellOf;
+	private int[] items;
+	private Array<T> entities;
+	
+	/**
+	 * @param cellSize side of a cell in metres, the usual query radius is a good choice
+	 */
+	public SpatialGrid(float cellSize) {
+		this.cellSize = cellSize;
+		cellOf = new int[0];
+		items = new int[0];
+		setBounds(cellSize, cellSize);
+	}
+	
+	/**
+	 * Size of the area covered in metres, starting at the origin
+	 */
+	public void setBounds(float worldWidth, float worldHeight) {
+		width = Math.max((int)Math.ceil(worldWidth / cellSize), 1);
+		height = Math.max((int)Math.ceil(worldHeight / cellSize), 1);
+		cellStart = new int[width * height + 1];
+		entities = null;
+	}
+	
+	public void rebuild(Array<T> entities) {
+		int numEntities = entities.size;
+		int numCells = width * height;
+		this.entities = entities;
+		
+		if (items.length < numEntities) {
+			items = new int[numEntities];
+			cellOf = new int[numEntities];
+		}
+		
+		for (int i = 0; i <= numCells; ++i) {
+			cellStart[i] = 0;
+		}
+		
+		// Count, prefix sum and scatter, each cell keeps its entities in array order
+		for (int i = 0; i < numEntities; ++i) {
+			Vector2 position = entities.get(i).getPosition();
+			int cell = getCellX(position.x) + getCellY(position.y) * width;
+			cellOf[i] = cell;
+			++cellStart[cell + 1];
+		}
+		
+		for (int i = 0; i < numCells; ++i) {
+			cellStart[i + 1] += cellStart[i];
+		}
+		
+		for (int i = 0; i < numEntities; ++i) {
+			items[cellStart[cellOf[i]]++] = i;
+		}
+		
+		// Scattering moved every start to the next cell's
+		for (int i = numCells; i > 0; --i) {
+			cellStart[i] = cellStart[i - 1];
+		}
+		
+		cellStart[0] = 0;
+	}
+	
+	/**
+	 * Adds the entities in the cells overlapping the square around (x, y), callers
+	 * still have to check the actual distance
+	 */
+	public void query(float x, float y, float radius, Array<T> result) {
+		if (entities == null) {
+			return;
+		}
+		
+		int minX = getCellX(x - radius);
+		int maxX = getCellX(x + radius);
+		int minY = getCellY(y - radius);
+		int maxY = getCellY(y + radius);
+		
+		for (int cellY = minY; cellY <= maxY; ++cellY) {
+			for (int cellX = minX; cellX <= maxX; ++cellX) {
+				int cell = cellX + cellY * width;
+				
+				for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+					result.add(entities.get(items[i]));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Same as the other query but adds the indices the entities had in the array the
+	 * grid was built from
+	 */
+	public void query(float x, float y, float radius, IntArray result) {
+		if (entities == null) {
+			return;
+		}
+		
+		int minX = getCellX(x - radius);
+		int maxX = getCellX(x + radius);
+		int minY = getCellY(y - radius);
+		int maxY = getCellY(y + radius);
+		
+		for (int cellY = minY; cellY <= maxY; ++cellY) {
+			for (int cellX = minX; cellX <= maxX; ++cellX) {
+				int cell = cellX + cellY * width;
+				
+				for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+					result.add(items[i]);
+				}
+			}
+		}
+	}
+	
+	private int getCellX(float x) {
+		return Math.min(Math.max((int)Math.floor(x / cellSize), 0), width - 1);
+	}
+	
+	private int getCellY(float y) {
+		return Math.min(Math.max((int)Math.floor(y / cellSize), 0), height - 1);
+	}
+}
@@ -0,0 +1,567 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.Logger;
+import com.siondream.ld26.Steering.FollowFlowField;
+import com.siondream.ld26.Steering.FollowPath;
+
+/**
+ * Steers all the enemies at once instead of each one running its behaviours.
+ *
+ * Every tick the state of the enemies is gathered into flat arrays, one entry per
+ * enemy in the order of the enemies array, then each behaviour runs as a loop over
+ * all of them and the blended forces are applied to the bodies in a single pass.
+ * Bodies are read once per enemy and tick and only written to when applying.
+ *
+ * Behaviours, weights and their results are the same as Enemy.update(), the
+ * path cursors still live in the FollowPath of every enemy between ticks.
+ *
+ * Enemies far from the player and out of view are updated less often. Near ones
+ * every tick, mid range ones every few ticks and far ones even less and without
+ * separation. Skipped ticks are accumulated, throttled enemies get the velocity
+ * change the force would have caused over all of them at once and coast in between.
+ *
+ * The compute pass only reads shared state and writes to the entries of the enemies
+ * it is given, so with worker threads it runs over partitions of the enemies at the
+ * same time. Every enemy goes through the same operations in the same order either
+ * way, results do not depend on the partitions.
+ */
+public class SteeringSystem {
+	
+	public enum Tier {
+		Near,
+		Mid,
+		Far,
+	}
+	
+	private static final int separation = Enemy.separationBehavior;
+	private static final int followPath = Enemy.followPathBehavior;
+	private static final int followFlowField = Enemy.followFlowFieldBehavior;
+	private static final int seek = Enemy.seekBehavior;
+	private static final int numBehaviors = 4;
+	private static final String TAG = "SteeringSystem";
+	
+	private Logger logger;
+	private WorldController controller;
+	private TaskExecutor executor;
+	private Array<Partition> partitions;
+	private int size;
+	private float[] x;
+	private float[] y;
+	private float[] velocityX;
+	private float[] velocityY;
+	private float[] weights;
+	private float[] forceX;
+	private float[] forceY;
+	private Path[] paths;
+	private int[] pathIndices;
+	private boolean[] pathDone;
+	private boolean[] fieldDone;
+	private int[] updates;
+	private int numUpdates;
+	private float[] elapsed;
+	private boolean[] throttled;
+	private boolean[] coarse;
+	private int[] tierCounts;
+	private IntArray neighbours;
+	private Vector2 waypoint;
+	private int mismatches;
+	
+	// Copies used to check parallel results against the serial ones
+	private float[] checkForceX;
+	private float[] checkForceY;
+	private int[] checkIndices;
+	private boolean[] checkPathDone;
+	private boolean[] checkFieldDone;
+	
+	/**
+	 * @param executor computes partitions of the enemies on its workers, if it has any
+	 */
+	public SteeringSystem(WorldController controller, TaskExecutor executor) {
+		logger = new Logger(TAG, Globals.debugLevel);
+		this.controller = controller;
+		this.executor = executor;
+		partitions = new Array<Partition>();
+		size = 0;
+		neighbours = new IntArray();
+		waypoint = new Vector2();
+		mismatches = 0;
+		tierCounts = new int[Tier.values().length];
+		ensureCapacity(64);
+		
+		for (int i = 0; i <= executor.getParallelism(); ++i) {
+			partitions.add(new Partition());
+		}
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * @return number of enemies in the tier during the last update
+	 */
+	public int getTierCount(Tier tier) {
+		return tierCounts[tier.ordinal()];
+	}
+	
+	/**
+	 * @return number of enemies steered during the last update, the rest coasted
+	 */
+	public int getUpdatedCount() {
+		return numUpdates;
+	}
+	
+	/**
+	 * @return number of enemies whose parallel results differed from the serial ones,
+	 * only counted with Globals.enemySteeringCheck
+	 */
+	public int getMismatchCount() {
+		return mismatches;
+	}
+	
+	public void update(Array<Enemy> enemies, float delta) {
+		gather(enemies, delta);
+		controller.getEnemyGrid().rebuild(enemies);
+		
+		if (Globals.enemyParallelSteering && partitions.size > 1 && numUpdates >= Globals.enemyParallelMinEnemies) {
+			if (Globals.enemySteeringCheck) {
+				store();
+			}
+			
+			computeParallel();
+			
+			if (Globals.enemySteeringCheck) {
+				check();
+			}
+		}
+		else {
+			compute(0, numUpdates, neighbours, waypoint);
+		}
+		
+		apply(enemies);
+		
+		if (logger.getLevel() >= Logger.INFO) {
+			logger.info("" + numUpdates + " / " + size + " enemies steered, " + getTierCount(Tier.Near) + " near, " +
+						getTierCount(Tier.Mid) + " mid, " + getTierCount(Tier.Far) + " far");
+		}
+	}
+	
+	private void computeParallel() {
+		int numPartitions = partitions.size;
+		
+		for (int i = 0; i < numPartitions; ++i) {
+			Partition partition = partitions.get(i);
+			partition.from = numUpdates * i / numPartitions;
+			partition.to = numUpdates * (i + 1) / numPartitions;
+		}
+		
+		executor.invokeAll(partitions);
+	}
+	
+	/**
+	 * Runs the serial pass again from the same inputs and compares both bit for bit
+	 */
+	private void check() {
+		float[] parallelForceX = forceX;
+		float[] parallelForceY = forceY;
+		int[] parallelIndices = pathIndices;
+		boolean[] parallelPathDone = pathDone;
+		boolean[] parallelFieldDone = fieldDone;
+		
+		// Swap in the inputs stored before the parallel pass
+		forceX = checkForceX;
+		forceY = checkForceY;
+		pathIndices = checkIndices;
+		pathDone = checkPathDone;
+		fieldDone = checkFieldDone;
+		compute(0, numUpdates, neighbours, waypoint);
+		
+		int count = 0;
+		
+		for (int k = 0; k < numUpdates; ++k) {
+			int i = updates[k];
+			
+			if (Float.floatToRawIntBits(forceX[i]) != Float.floatToRawIntBits(parallelForceX[i]) ||
+				Float.floatToRawIntBits(forceY[i]) != Float.floatToRawIntBits(parallelForceY[i]) ||
+				pathIndices[i] != parallelIndices[i] ||
+				pathDone[i] != parallelPathDone[i] ||
+				fieldDone[i] != parallelFieldDone[i]) {
+				++count;
+			}
+		}
+		
+		if (count > 0) {
+			logger.error("parallel steering differs from serial for " + count + " of " + numUpdates + " enemies");
+		}
+		
+		mismatches += count;
+		checkForceX = parallelForceX;
+		checkForceY = parallelForceY;
+		checkIndices = parallelIndices;
+		checkPathDone = parallelPathDone;
+		checkFieldDone = parallelFieldDone;
+	}
+	
+	private void store() {
+		if (checkIndices == null || checkIndices.length < x.length) {
+			checkForceX = new float[x.length];
+			checkForceY = new float[x.length];
+			checkIndices = new int[x.length];
+			checkPathDone = new boolean[x.length];
+			checkFieldDone = new boolean[x.length];
+		}
+		
+		System.arraycopy(pathIndices, 0, checkIndices, 0, size);
+		System.arraycopy(pathDone, 0, checkPathDone, 0, size);
+		System.arraycopy(fieldDone, 0, checkFieldDone, 0, size);
+	}
+	
+	/**
+	 * Syncs every enemy with its body, then runs the state machines of the ones due
+	 * an update and copies what steering needs out of them
+	 */
+	private void gather(Array<Enemy> enemies, float delta) {
+		OrthographicCamera camera = controller.getCamera();
+		Vector2 player = controller.getPlayer().getPosition();
+		float halfWidth = camera.viewportWidth * camera.zoom * 0.5f + Globals.enemyLodViewMargin;
+		float halfHeight = camera.viewportHeight * camera.zoom * 0.5f + Globals.enemyLodViewMargin;
+		float nearDistanceSq = Globals.enemyLodNearDistance * Globals.enemyLodNearDistance;
+		float farDistanceSq = Globals.enemyLodFarDistance * Globals.enemyLodFarDistance;
+		
+		size = enemies.size;
+		numUpdates = 0;
+		ensureCapacity(size);
+		
+		for (int i = 0; i < tierCounts.length; ++i) {
+			tierCounts[i] = 0;
+		}
+		
+		for (int i = 0; i < size; ++i) {
+			Enemy enemy = enemies.get(i);
+			enemy.syncWithBody();
+			
+			Vector2 position = enemy.getPosition();
+			x[i] = position.x;
+			y[i] = position.y;
+			
+			float distanceX = x[i] - player.x;
+			float distanceY = y[i] - player.y;
+			float distanceSq = distanceX * distanceX + distanceY * distanceY;
+			boolean visible = Math.abs(x[i] - camera.position.x) < halfWidth && Math.abs(y[i] - camera.position.y) < halfHeight;
+			Tier tier = Tier.Near;
+			int interval = 1;
+			
+			if (Globals.enemyLod && !visible && distanceSq >= nearDistanceSq) {
+				tier = distanceSq < farDistanceSq? Tier.Mid : Tier.Far;
+				interval = tier == Tier.Mid? Globals.enemyLodMidInterval : Globals.enemyLodFarInterval;
+			}
+			
+			++tierCounts[tier.ordinal()];
+			
+			float time = enemy.scheduleAI(delta, interval);
+			
+			if (time == 0.0f) {
+				continue;
+			}
+			
+			enemy.updateState(time);
+			updates[numUpdates++] = i;
+			elapsed[i] = time;
+			throttled[i] = interval > 1;
+			coarse[i] = tier == Tier.Far;
+			
+			Vector2 velocity = enemy.getBody().getLinearVelocity();
+			velocityX[i] = velocity.x;
+			velocityY[i] = velocity.y;
+			
+			for (int j = 0; j < numBehaviors; ++j) {
+				weights[i * numBehaviors + j] = enemy.getSteeringWeight(j);
+			}
+			
+			FollowPath follow = enemy.getFollowPath();
+			paths[i] = follow.path;
+			pathIndices[i] = follow.currentPathIndex;
+			pathDone[i] = follow.done;
+			fieldDone[i] = enemy.getFollowFlowField().done;
+		}
+	}
+	
+	/**
+	 * Blended force for the enemies in [from, to), it only writes to their entries
+	 */
+	private void compute(int from, int to, IntArray neighbours, Vector2 waypoint) {
+		for (int k = from; k < to; ++k) {
+			int i = updates[k];
+			forceX[i] = 0.0f;
+			forceY[i] = 0.0f;
+		}
+		
+		// Priority order, like Steering.Blender
+		computeSeparation(from, to, neighbours);
+		computeFollowPath(from, to);
+		computeFollowFlowField(from, to, waypoint);
+		computeSeek(from, to);
+		
+		for (int k = from; k < to; ++k) {
+			int i = updates[k];
+			float lengthSq = forceX[i] * forceX[i] + forceY[i] * forceY[i];
+			
+			if (lengthSq > Globals.enemyForce * Globals.enemyForce) {
+				float scale = Globals.enemyForce / (float)Math.sqrt(lengthSq);
+				forceX[i] *= scale;
+				forceY[i] *= scale;
+			}
+		}
+	}
+	
+	private void computeFollowPath(int from, int to) {
+		float arriveDistanceSq = Globals.enemyEndDistance * Globals.enemyEndDistance;
+		
+		for (int k = from; k < to; ++k) {
+			int i = updates[k];
+			Path path = paths[i];
+			
+			if (path == null || weights[i * numBehaviors + followPath] == 0.0f || isSaturated(i)) {
+				continue;
+			}
+			
+			float futureX = x[i] + velocityX[i] * Globals.enemyPredictTime;
+			float futureY = y[i] + velocityY[i] * Globals.enemyPredictTime;
+			int index = pathIndices[i];
+			
+			if (index == path.getSize() - 1) {
+				pathDone[i] = true;
+			}
+			else {
+				Vector2 point = path.get(index);
+				float toPointX = point.x - futureX;
+				float toPointY = point.y - futureY;
+				float distanceSq = toPointX * toPointX + toPointY * toPointY;
+				
+				if (distanceSq < arriveDistanceSq) {
+					++index;
+				}
+				else {
+					Vector2 next = path.get(index + 1);
+					float pathX = next.x - point.x;
+					float pathY = next.y - point.y;
+					float pathLength = (float)Math.sqrt(pathX * pathX + pathY * pathY);
+					float toPointLength = (float)Math.sqrt(distanceSq);
+					
+					if (pathLength != 0.0f) {
+						pathX /= pathLength;
+						pathY /= pathLength;
+					}
+					
+					if ((toPointX / toPointLength) * pathX + (toPointY / toPointLength) * pathY > Globals.enemyPathAngleThreshold) {
+						++index;
+					}
+				}
+			}
+			
+			pathIndices[i] = index;
+			addSeek(i, path.get(index), weights[i * numBehaviors + followPath]);
+		}
+	}
+	
+	private void computeSeparation(int from, int to, IntArray neighbours) {
+		SpatialGrid<Enemy> grid = controller.getEnemyGrid();
+		float checkDistance = Globals.enemySeparationCheckDistance;
+		
+		for (int k = from; k < to; ++k) {
+			int i = updates[k];
+			float weight = weights[i * numBehaviors + separation];
+			
+			// Nobody is looking, crowds far away can overlap for a while
+			if (weight == 0.0f || coarse[i] || isSaturated(i)) {
+				continue;
+			}
+			
+			float sumX = 0.0f;
+			float sumY = 0.0f;
+			
+			neighbours.clear();
+			grid.query(x[i], y[i], checkDistance, neighbours);
+			
+			for (int j = 0; j < neighbours.size; ++j) {
+				int other = neighbours.get(j);
+				float directionX = x[i] - x[other];
+				float directionY = y[i] - y[other];
+				float distanceSq = directionX * directionX + directionY * directionY;
+				
+				if (other == i || distanceSq >= checkDistance * checkDistance) {
+					continue;
+				}
+				
+				float strength = Math.min(Globals.enemySeparationDecayCoefficient / distanceSq, Globals.enemyForce);
+				float length = (float)Math.sqrt(distanceSq);
+				
+				if (length != 0.0f) {
+					directionX /= length;
+					directionY /= length;
+				}
+				
+				sumX += directionX * strength;
+				sumY += directionY * strength;
+			}
+			
+			float length = (float)Math.sqrt(sumX * sumX + sumY * sumY);
+			
+			if (length != 0.0f) {
+				forceX[i] += sumX / length * weight;
+				forceY[i] += sumY / length * weight;
+			}
+		}
+	}
+	
+	private void computeSeek(int from, int to) {
+		Vector2 target = controller.getPlayer().getPosition();
+		
+		for (int k = from; k < to; ++k) {
+			int i = updates[k];
+			if (!isSaturated(i)) {
+				addSeek(i, target, weights[i * numBehaviors + seek]);
+			}
+		}
+	}
+	
+	private void computeFollowFlowField(int from, int to, Vector2 waypoint) {
+		FlowField flowField = controller.getPathFinder().getFlowField();
+		
+		for (int k = from; k < to; ++k) {
+			int i = updates[k];
+			float weight = weights[i * numBehaviors + followFlowField];
+			
+			if (weight == 0.0f || isSaturated(i)) {
+				continue;
+			}
+			
+			fieldDone[i] = !flowField.getWaypoint(x[i], y[i], waypoint);
+			
+			if (!fieldDone[i]) {
+				addSeek(i, waypoint, weight);
+			}
+		}
+	}
+	
+	/**
+	 * @return whether the force already reached the maximum, lower priority
+	 * behaviours would be clamped away
+	 */
+	private boolean isSaturated(int i) {
+		return forceX[i] * forceX[i] + forceY[i] * forceY[i] >= Globals.enemyForce * Globals.enemyForce;
+	}
+	
+	private void addSeek(int i, Vector2 target, float weight) {
+		if (weight == 0.0f) {
+			return;
+		}
+		
+		float directionX = target.x - x[i];
+		float directionY = target.y - y[i];
+		float length = (float)Math.sqrt(directionX * directionX + directionY * directionY);
+		
+		if (length != 0.0f) {
+			directionX /= length;
+			directionY /= length;
+		}
+		
+		forceX[i] += directionX * Globals.enemyForce * weight;
+		forceY[i] += directionY * Globals.enemyForce * weight;
+	}
+	
+	/**
+	 * Writes the path cursors back and pushes the bodies, Box2D is only touched here
+	 */
+	private void apply(Array<Enemy> enemies) {
+		float maxSpeedSq = Globals.enemyMaxSpeed * Globals.enemyMaxSpeed;
+		
+		for (int k = 0; k < numUpdates; ++k) {
+			int i = updates[k];
+			Enemy enemy = enemies.get(i);
+			Body body = enemy.getBody();
+			
+			FollowPath follow = enemy.getFollowPath();
+			follow.currentPathIndex = pathIndices[i];
+			follow.done = pathDone[i];
+			
+			FollowFlowField field = enemy.getFollowFlowField();
+			field.done = fieldDone[i];
+			
+			float vx = velocityX[i];
+			float vy = velocityY[i];
+			
+			if (enemy.canMove() && forceX[i] * forceX[i] + forceY[i] * forceY[i] > 0.0f) {
+				if (throttled[i]) {
+					// Same change in velocity as the force applied over every tick it skipped
+					float scale = elapsed[i] / body.getMass();
+					vx += forceX[i] * scale;
+					vy += forceY[i] * scale;
+				}
+				else {
+					body.applyForceToCenter(forceX[i], forceY[i], true);
+				}
+				
+				float speedSq = vx * vx + vy * vy;
+				
+				if (speedSq > maxSpeedSq) {
+					float scale = Globals.enemyMaxSpeed / (float)Math.sqrt(speedSq);
+					vx *= scale;
+					vy *= scale;
+				}
+				
+				// Look where you're going
+				enemy.setHeading(MathUtils.atan2(vy, vx));
+			}
+			else {
+				vx = 0.0f;
+				vy = 0.0f;
+				body.setAngularVelocity(0.0f);
+			}
+			
+			body.setLinearVelocity(vx, vy);
+			paths[i] = null;
+		}
+	}
+	
+	private void ensureCapacity(int capacity) {
+		if (x != null && x.length >= capacity) {
+			return;
+		}
+		
+		capacity = Math.max(capacity, x != null? x.length * 2 : capacity);
+		x = new float[capacity];
+		y = new float[capacity];
+		velocityX = new float[capacity];
+		velocityY = new float[capacity];
+		weights = new float[capacity * numBehaviors];
+		forceX = new float[capacity];
+		forceY = new float[capacity];
+		paths = new Path[capacity];
+		pathIndices = new int[capacity];
+		pathDone = new boolean[capacity];
+		fieldDone = new boolean[capacity];
+		updates = new int[capacity];
+		elapsed = new float[capacity];
+		throttled = new boolean[capacity];
+		coarse = new boolean[capacity];
+	}
+	
+	private class Partition implements Runnable {
+		public int from = 0;
+		public int to = 0;
+		public IntArray neighbours = new IntArray();
+		public Vector2 waypoint = new Vector2();
+		
+		@Override
+		public void run() {
+			compute(from, to, neighbours, waypoint);
+		}
+	}
+}
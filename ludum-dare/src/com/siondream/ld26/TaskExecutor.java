@@ -0,0 +1,30 @@
+package com.siondream.ld26;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Runs work that can be done away from the game thread.
+ *
+ * Core code only talks to this interface so it still builds for the html backend,
+ * launchers that can use threads pass a ThreadExecutor to LudumDare.
+ */
+public interface TaskExecutor {
+	
+	/**
+	 * Runs the task at some point, possibly on another thread
+	 */
+	public void execute(Runnable task);
+	
+	/**
+	 * Runs all the tasks, possibly at the same time, and returns once they are done.
+	 * The calling thread runs the ones no worker has picked up yet.
+	 */
+	public void invokeAll(Array<? extends Runnable> tasks);
+	
+	/**
+	 * @return number of worker threads, 0 if tasks run on the calling thread
+	 */
+	public int getParallelism();
+	
+	public void dispose();
+}
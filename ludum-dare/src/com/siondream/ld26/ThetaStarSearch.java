@@ -0,0 +1,76 @@
+package com.siondream.ld26;
+
+/**
+ * Theta*, any angle A* over a NavGrid.
+ *
+ * A neighbour is linked straight to the parent of the cell being expanded when
+ * there is line of sight between them, so consecutive waypoints can be any number
+ * of cells apart in any direction. Costs are Euclidean distances between cell
+ * centres, straight moves cost 1 and diagonal ones the square root of 2, and the
+ * heuristic is the Euclidean distance to the destination. Paths are close to the
+ * shortest one in the plane, not only the shortest one through the grid.
+ */
+public class ThetaStarSearch extends GridSearch {
+	
+	public ThetaStarSearch(NavGrid grid) {
+		super(grid);
+	}
+	
+	@Override
+	public PathSearch copy() {
+		return new ThetaStarSearch(getGrid());
+	}
+	
+	/**
+	 * There is one waypoint per node, consecutive ones are in line of sight
+	 */
+	@Override
+	public void getPath(Path path) {
+		NavGrid grid = getGrid();
+		path.clear();
+		
+		for (int cell = getDestination(); cell != -1; cell = getParent(cell)) {
+			path.add(grid.getCentreX(grid.getX(cell)), grid.getCentreY(grid.getY(cell)));
+		}
+		
+		path.reverse();
+	}
+	
+	@Override
+	protected void expand(int current) {
+		NavGrid grid = getGrid();
+		int parent = getParent(current);
+		int parentX = parent != -1? grid.getX(parent) : 0;
+		int parentY = parent != -1? grid.getY(parent) : 0;
+		int mask = grid.getNeighbours(current);
+		
+		for (int i = 0; mask != 0; ++i, mask >>= 1) {
+			if ((mask & 1) == 0) {
+				continue;
+			}
+			
+			int neighbour = current + grid.getOffset(i);
+			int x = grid.getX(neighbour);
+			int y = grid.getY(neighbour);
+			
+			if (parent != -1 && grid.hasLineOfSight(parentX, parentY, x, y)) {
+				relax(parent, neighbour, distance(parent, neighbour));
+			}
+			else {
+				relax(current, neighbour, distance(current, neighbour));
+			}
+		}
+	}
+	
+	@Override
+	protected float h(int cell) {
+		return distance(cell, getDestination());
+	}
+	
+	private float distance(int from, int to) {
+		NavGrid grid = getGrid();
+		int x = grid.getX(from) - grid.getX(to);
+		int y = grid.getY(from) - grid.getY(to);
+		return (float)Math.sqrt(x * x + y * y);
+	}
+}
@@ -0,0 +1,168 @@
+package com.siondream.ld26;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * Fixed pool of daemon worker threads.
+ *
+ * Not available in the html backend, LudumDare.gwt.xml leaves it out.
+ */
+public class ThreadExecutor implements TaskExecutor {
+	
+	private static final int QUEUE_CAPACITY = 4096;
+	
+	private ExecutorService executor;
+	private int threads;
+	private Array<Batch> batches = new Array<Batch>();
+	private final AtomicInteger remaining = new AtomicInteger();
+	private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+	private final Object lock = new Object();
+	
+	public ThreadExecutor() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+	
+	public ThreadExecutor(int threads) {
+		this.threads = threads;
+		
+		// An array backed queue does not allocate a node per task. Once it is full tasks
+		// are rejected rather than run on the caller, which could be the game thread
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+										  new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+										  new ThreadFactory() {
+			private int count = 0;
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "worker-" + count++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Callers keep the number of pending tasks bounded, more than QUEUE_CAPACITY
+	 * waiting for a worker is an error.
+	 */
+	@Override
+	public void execute(Runnable task) {
+		try {
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			throw new GdxRuntimeException("worker queue is full", e);
+		}
+	}
+	
+	/**
+	 * Batches, the counter and the error slot are kept between calls so nothing is
+	 * allocated once the batch array has grown. Calls must not overlap.
+	 */
+	@Override
+	public synchronized void invokeAll(Array<? extends Runnable> tasks) {
+		while (batches.size < tasks.size) {
+			batches.add(new Batch());
+		}
+		
+		error.set(null);
+		remaining.set(tasks.size);
+		
+		for (int i = 0; i < tasks.size; ++i) {
+			Batch batch = batches.get(i);
+			batch.task = tasks.get(i);
+			
+			// Published by the volatile write, workers still holding this batch from an
+			// earlier call may pick up the new task and that is fine
+			batch.claimed.set(false);
+			
+			if (i > 0) {
+				try {
+					executor.execute(batch);
+				}
+				catch (RejectedExecutionException e) {
+					// Left unclaimed, the loop below runs it
+				}
+			}
+		}
+		
+		// Workers may be busy with long tasks, whatever they have not started runs here
+		for (int i = 0; i < tasks.size; ++i) {
+			batches.get(i).run();
+		}
+		
+		boolean interrupted = false;
+		
+		synchronized (lock) {
+			while (remaining.get() > 0) {
+				try {
+					lock.wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		for (int i = 0; i < tasks.size; ++i) {
+			batches.get(i).task = null;
+		}
+		
+		Throwable failure = error.getAndSet(null);
+		
+		if (failure != null) {
+			throw new GdxRuntimeException("task failed", failure);
+		}
+	}
+	
+	@Override
+	public int getParallelism() {
+		return threads;
+	}
+	
+	@Override
+	public void dispose() {
+		executor.shutdownNow();
+	}
+	
+	private class Batch implements Runnable {
+		private volatile Runnable task;
+		private AtomicBoolean claimed = new AtomicBoolean(true);
+		
+		@Override
+		public void run() {
+			if (!claimed.compareAndSet(false, true)) {
+				return;
+			}
+			
+			try {
+				task.run();
+			}
+			catch (Throwable t) {
+				error.compareAndSet(null, t);
+			}
+			finally {
+				if (remaining.decrementAndGet() == 0) {
+					synchronized (lock) {
+						lock.notifyAll();
+					}
+				}
+			}
+		}
+	}
+}
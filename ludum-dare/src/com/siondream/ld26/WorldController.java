@@ -62,6 +62,9 @@ public class WorldController implements Disposable, ContactListener {
 	private Player player;
 	private Exit exit;
 	private Array<Enemy> enemies;
+	private EnemyPool enemyPool;
+	private SpatialGrid<Enemy> enemyGrid;
+	private SteeringSystem steeringSystem;
 	private EnemySpawnManager spawnManager;
 	private Array<Bullet> bullets;
 	private BulletPool bulletPool;
@@ -99,10 +102,13 @@ public class WorldController implements Disposable, ContactListener {
 		
 		mapLoader = new TmxMapLoader();
 		enemies = new Array<Enemy>();
+		enemyPool = new EnemyPool(this);
+		enemyGrid = new SpatialGrid<Enemy>(Globals.enemySeparationCheckDistance);
+		steeringSystem = new SteeringSystem(this, game.getExecutor());
 		bullets = new Array<Bullet>();
 		bulletPool = new BulletPool(this);
 		cameraController = new CameraController(game.getCamera(), player);
-		pathFinder = new PathFinder();
+		pathFinder = new PathFinder(game.getExecutor());
 		spawnManager = new EnemySpawnManager(this);
 		tipManager = new TipManager(this);
 		
@@ -126,6 +132,10 @@ public class WorldController implements Disposable, ContactListener {
 		exit = new Exit(this);
 		loadLevel(levelName);
 		pathFinder.init(map);
+		
+		NavGrid grid = pathFinder.getGrid();
+		enemyGrid.setBounds(grid.getWidth() * grid.getTileWidth() * Globals.pixelsToMetres,
+							grid.getHeight() * grid.getTileHeight() * Globals.pixelsToMetres);
 		levelSetup();
 		cameraController.setTarget(player);
 		cameraController.init();
@@ -138,6 +148,7 @@ public class WorldController implements Disposable, ContactListener {
 	@Override
 	public void dispose() {
 		map.dispose();
+		getRayHandler().setStaticBodies(null);
 		mapBodyManager.destroyPhysics();
 		player.dispose();
 		exit.dispose();
@@ -150,11 +161,9 @@ public class WorldController implements Disposable, ContactListener {
 		
 		bullets.clear();
 		
-		for (Enemy enemy : enemies) {
-			enemy.dispose();
-		}
-		
+		// The pool disposes every enemy it created, active ones included
 		enemies.clear();
+		enemyPool.dispose();
 		getStage().clear();
 	}
 	
@@ -202,6 +211,13 @@ public class WorldController implements Disposable, ContactListener {
 		return enemies;
 	}
 	
+	/**
+	 * @return enemies bucketed by position at the start of the tick
+	 */
+	public SpatialGrid<Enemy> getEnemyGrid() {
+		return enemyGrid;
+	}
+	
 	public Array<Bullet> getBullets() {
 		return bullets;
 	}
@@ -210,6 +226,12 @@ public class WorldController implements Disposable, ContactListener {
 		return state;
 	}
 	
+	public void spawnEnemy(Vector2 position) {
+		Enemy enemy = enemyPool.obtain();
+		enemy.setPosition(position);
+		enemies.add(enemy);
+	}
+	
 	public void shoot(Vector2 position, Vector2 direction) {
 		shootSFX.play();
 		Bullet bullet = bulletPool.obtain();
@@ -223,8 +245,24 @@ public class WorldController implements Disposable, ContactListener {
 			// Update all elements
 			player.update(delta);
 			
-			for (int i = 0; i < enemies.size; ++i) {
-				enemies.get(i).update(delta);
+			// Path requests closest to the player are served first
+			pathFinder.setFocus(player.getX(), player.getY());
+			
+			// Enemies sample the field this frame, it only rebuilds when the player changes cell
+			if (Globals.enemyFlowField) {
+				pathFinder.getFlowField().setTarget(player.getX(), player.getY());
+			}
+			
+			if (Globals.enemyBatchedSteering) {
+				steeringSystem.update(enemies, delta);
+			}
+			else {
+				// Neighbourhood queries during the enemy updates see positions from this point
+				enemyGrid.rebuild(enemies);
+				
+				for (int i = 0; i < enemies.size; ++i) {
+					enemies.get(i).update(delta);
+				}
 			}
 			
 			for (int i = 0; i < bullets.size; ++i) {
@@ -262,6 +300,10 @@ public class WorldController implements Disposable, ContactListener {
 	private void loadLevel(String levelName) {
 		map = mapLoader.load(levelName);
 		mapBodyManager.createPhysics(map, Globals.physicsLayer);
+		
+		if (Globals.lightStaticOccluders) {
+			getRayHandler().setStaticBodies(mapBodyManager.getBodies());
+		}
 	}
 	
 	private void levelSetup() {
@@ -388,7 +430,7 @@ public class WorldController implements Disposable, ContactListener {
 			Enemy enemy = enemies.get(i);
 			
 			if (enemy.getState() == State.Erase) {
-				enemy.dispose();
+				enemyPool.free(enemy);
 				enemies.removeIndex(i);
 			}
 			else {
@@ -671,6 +713,46 @@ public class WorldController implements Disposable, ContactListener {
 		}
 	}
 	
+	/**
+	 * Enemies keep their bodies while they wait in the pool, they are only destroyed
+	 * along with the level. The pool owns every enemy it created, free or active, and
+	 * disposes each of them once
+	 */
+	private static class EnemyPool extends Pool<Enemy> implements Disposable {
+		
+		private WorldController controller;
+		private Array<Enemy> created;
+		
+		public EnemyPool(WorldController controller) {
+			this.controller = controller;
+			this.created = new Array<Enemy>();
+		}
+		
+		@Override
+		protected Enemy newObject() {
+			Enemy enemy = new Enemy(controller);
+			created.add(enemy);
+			return enemy;
+		}
+		
+		@Override
+		public Enemy obtain() {
+			Enemy enemy = super.obtain();
+			enemy.getBody().setActive(true);
+			return enemy;
+		}
+		
+		@Override
+		public void dispose() {
+			for (int i = 0; i < created.size; ++i) {
+				created.get(i).dispose();
+			}
+			
+			created.clear();
+			clear();
+		}
+	}
+	
 	private void start() {
 		setState(GameState.Playing);
 	}
@@ -4,20 +4,23 @@ import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
-import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
 import com.badlogic.gdx.maps.tiled.renderers.OrthogonalTiledMapRenderer;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.Logger;
 import com.lights.box2dLight.RayHandler;
 
 public class WorldRenderer implements Disposable {
+	private static final String TAG = "WorldRenderer";
+	
 	private OrthogonalTiledMapRenderer mapRenderer;
 	private ShapeRenderer shapeRenderer;
+	private Logger logger;
 	
 	public WorldRenderer() {
-		
+		logger = new Logger(TAG, Globals.debugLevel);
 	}
 	
 	public void init(WorldController controller) {
@@ -65,6 +68,12 @@ public class WorldRenderer implements Disposable {
 		rayHandler.setCombinedMatrix(camera.combined);
 		rayHandler.updateAndRender();
 		
+		if (logger.getLevel() >= Logger.INFO) {
+			logger.info("" + rayHandler.lightRenderedLastFrame + " lights rendered, " +
+						rayHandler.lightSkippedLastFrame + " reused their mesh, " +
+						rayHandler.raysLastFrame + " rays");
+		}
+		
 		Stage stage = controller.getStage();
 		OrthographicCamera uiCamera = controller.getUICamera();
 		stage.setCamera(uiCamera);
@@ -109,22 +118,23 @@ public class WorldRenderer implements Disposable {
 				
 				shapeRenderer.begin(ShapeType.Filled);
 				
-				TiledMapTileLayer layer = (TiledMapTileLayer)controller.getMap().getLayers().get("background");
+				NavGrid grid = controller.getPathFinder().getGrid();
+				float tileWidth = grid.getTileWidth() * Globals.pixelsToMetres;
+				float tileHeight = grid.getTileHeight() * Globals.pixelsToMetres;
 				
-				for (int x = 0; x < layer.getWidth(); ++x) {
-					for (int y = 0; y < layer.getHeight(); ++y) {
-						boolean walkable = Boolean.parseBoolean(layer.getCell(x, y).getTile().getProperties().get("walkable", "false", String.class));
+				for (int x = 0; x < grid.getWidth(); ++x) {
+					for (int y = 0; y < grid.getHeight(); ++y) {
+						if (!grid.hasTile(x, y)) {
+							continue;
+						}
 						
-						if (walkable) {
+						if (grid.isWalkable(x, y)) {
 							shapeRenderer.setColor(0.0f, 1.0f, 0.0f, 0.1f);
 						}
 						else {
 							shapeRenderer.setColor(1.0f, 0.0f, 0.0f, 0.1f);
 						}
-						shapeRenderer.rect(x * layer.getTileWidth() * Globals.pixelsToMetres,
-										   y * layer.getTileHeight() * Globals.pixelsToMetres,
-										   layer.getTileWidth() * Globals.pixelsToMetres,
-										   layer.getTileHeight() * Globals.pixelsToMetres);
+						shapeRenderer.rect(x * tileWidth, y * tileHeight, tileWidth, tileHeight);
 					}
 				}
 				shapeRenderer.end();
@@ -134,12 +144,12 @@ public class WorldRenderer implements Disposable {
 				shapeRenderer.begin(ShapeType.Line);
 				shapeRenderer.setColor(1.0f, 0.0f, 1.0f, 1.0f);
 				for (Enemy enemy : controller.getEnemies()) {
-					Vector2[] path = enemy.getPath();
+					Path path = enemy.getPath();
 					
-					if (path != null) {
-						for (int i = 0; i < path.length - 1; ++i) {
-							shapeRenderer.line(path[i].x, path[i].y, path[i + 1].x, path[i + 1].y);
-						}
+					for (int i = 0; i < path.getSize() - 1; ++i) {
+						Vector2 point = path.get(i);
+						Vector2 next = path.get(i + 1);
+						shapeRenderer.line(point.x, point.y, next.x, next.y);
 					}
 				}
 				shapeRenderer.end();
@@ -0,0 +1,218 @@
+package com.lights.box2dLight;
+
+/**
+ * Runs LightBatch without GL and checks every draw call: the vertex limit of
+ * RayHandler, the flush when the batch is full and a single primitive bigger
+ * than the batch. Throws on the first mistake.
+ *
+ * Lives outside of src so neither the game nor the GWT build compile it. It
+ * needs gdx.jar and the compiled game on the classpath, but no GL:
+ * java com.lights.box2dLight.LightBatchCheck
+ */
+final class LightBatchCheck implements LightBatch.Drawer {
+
+	private static final int FAN = 0;
+	private static final int STRIP = 1;
+	private static final int VERTEX_SIZE = LightBatch.VERTEX_SIZE;
+
+	private final LightBatch batch;
+
+	/** type, vertices and triangles drawn of every primitive added */
+	private int types[] = new int[64];
+	private int sizes[] = new int[64];
+	private int triangles[] = new int[64];
+	private int primitiveNum = 0;
+
+	private int draws = 0;
+	private int lastDrawVertices = 0;
+	private int maxDrawVertices = 0;
+
+	LightBatchCheck(int maxVertices) {
+		batch = new LightBatch(maxVertices);
+		batch.drawer = this;
+	}
+
+	public static void main(String[] args) {
+		fillExactly();
+		overflow();
+		oversized();
+		System.out.println("LightBatch ok");
+	}
+
+	/** fans that fill the batch to the last vertex are drawn in one call */
+	private static void fillExactly() {
+		final int fanVertices = 64;
+		final LightBatchCheck test = new LightBatchCheck(
+				RayHandler.BATCH_VERTICES);
+		test.batch.begin(null);
+		for (int i = 0; i < RayHandler.BATCH_VERTICES / fanVertices; i++) {
+			test.add(FAN, fanVertices);
+		}
+		check(test.draws == 0, "flushed before the batch was full");
+		test.add(FAN, fanVertices);
+		check(test.lastDrawVertices == RayHandler.BATCH_VERTICES,
+				"full batch drew " + test.lastDrawVertices + " vertices");
+		test.batch.end();
+		check(test.draws == 2, test.draws + " draw calls, expected 2");
+		test.checkDone();
+	}
+
+	/** lights of the sizes RayHandler batches, the batch flushes as it fills */
+	private static void overflow() {
+		final LightBatchCheck test = new LightBatchCheck(
+				RayHandler.BATCH_VERTICES);
+		test.batch.begin(null);
+		int vertices = 0;
+		for (int i = 0; i < 400; i++) {
+			// a point light of 128 rays with its soft shadow strip
+			test.add(FAN, 130);
+			test.add(STRIP, 256);
+			vertices += 130 + 256;
+		}
+		test.batch.end();
+		check(test.maxDrawVertices <= RayHandler.BATCH_VERTICES, "drew "
+				+ test.maxDrawVertices + " vertices at once");
+		check(test.draws * RayHandler.BATCH_VERTICES >= vertices, "only "
+				+ test.draws + " draw calls");
+		test.checkDone();
+
+		// nothing is left over for the next frame
+		test.batch.begin(null);
+		test.batch.end();
+		check(test.batch.drawCalls == 0, "empty frame drew");
+	}
+
+	/** a primitive bigger than the batch grows it and is drawn whole */
+	private static void oversized() {
+		final int size = RayHandler.BATCH_VERTICES + 1808;
+		LightBatchCheck test = new LightBatchCheck(RayHandler.BATCH_VERTICES);
+		test.batch.begin(null);
+		test.add(FAN, 100);
+		test.add(STRIP, size);
+		test.add(FAN, 100);
+		check(test.lastDrawVertices == size, "big strip drew "
+				+ test.lastDrawVertices + " of " + size + " vertices");
+		// the batch keeps the bigger capacity
+		for (int i = 0; i < 90; i++) {
+			test.add(FAN, 100);
+		}
+		test.batch.end();
+		check(test.lastDrawVertices == 9100, "grown batch drew "
+				+ test.lastDrawVertices + " of 9100 vertices");
+		check(test.draws == 3, test.draws + " draw calls, expected 3");
+		test.checkDone();
+
+		// first thing in an empty batch
+		test = new LightBatchCheck(RayHandler.BATCH_VERTICES);
+		test.batch.begin(null);
+		test.add(FAN, size);
+		test.batch.end();
+		check(test.draws == 1 && test.lastDrawVertices == size, "big fan "
+				+ "took " + test.draws + " draw calls");
+		test.checkDone();
+	}
+
+	/**
+	 * Adds a primitive, the batch has to draw what it holds if and only if the
+	 * primitive does not fit.
+	 */
+	private void add(int type, int count) {
+		if (types.length == primitiveNum) {
+			types = grow(types);
+			sizes = grow(sizes);
+			triangles = grow(triangles);
+		}
+		types[primitiveNum] = type;
+		sizes[primitiveNum] = count;
+
+		final float primitive[] = new float[count * VERTEX_SIZE];
+		for (int i = 0; i < count; i++) {
+			// x is the primitive and y the vertex
+			primitive[i * VERTEX_SIZE] = primitiveNum;
+			primitive[i * VERTEX_SIZE + 1] = i;
+		}
+		primitiveNum++;
+
+		final int capacity = batch.vertices.length / VERTEX_SIZE;
+		final boolean flush = batch.indexNum > 0
+				&& batch.vertexNum + count > capacity;
+		final int before = draws;
+		if (type == FAN)
+			batch.addFan(primitive, primitive.length);
+		else
+			batch.addStrip(primitive, primitive.length);
+		check(draws == (flush ? before + 1 : before), (flush ? "did not flush "
+				: "flushed ") + "at " + count + " vertices");
+	}
+
+	/**
+	 * Every triangle has to be made of the vertices of one primitive in the
+	 * right order.
+	 */
+	@Override
+	public void draw(LightBatch drawn) {
+		check(drawn == batch, "drew another batch");
+		final float vertices[] = batch.vertices;
+		final int vertexNum = batch.vertexNum;
+		final int indexNum = batch.indexNum;
+
+		draws++;
+		lastDrawVertices = vertexNum;
+		maxDrawVertices = Math.max(maxDrawVertices, vertexNum);
+		check(vertices.length >= vertexNum * VERTEX_SIZE
+				&& batch.indices.length >= indexNum, "batch overran its arrays");
+		check(indexNum % 3 == 0, "indices do not make triangles");
+
+		for (int i = 0; i < indexNum; i += 3) {
+			final int a = vertex(i) * VERTEX_SIZE;
+			final int b = vertex(i + 1) * VERTEX_SIZE;
+			final int c = vertex(i + 2) * VERTEX_SIZE;
+			final int primitive = (int) vertices[a];
+			check(primitive == (int) vertices[b]
+					&& primitive == (int) vertices[c],
+					"triangle mixes primitives");
+
+			final int va = (int) vertices[a + 1];
+			final int vb = (int) vertices[b + 1];
+			final int vc = (int) vertices[c + 1];
+			if (types[primitive] == FAN)
+				check(va == 0 && vc == vb + 1, "fan triangle " + va + ", "
+						+ vb + ", " + vc);
+			else
+				check(vb == va + 1 && vc == vb + 1, "strip triangle " + va
+						+ ", " + vb + ", " + vc);
+			triangles[primitive]++;
+		}
+	}
+
+	/** indices are unsigned on the GPU */
+	private int vertex(int index) {
+		final int vertex = batch.indices[index] & 0xffff;
+		check(vertex < batch.vertexNum, "index " + vertex + " past "
+				+ batch.vertexNum + " vertices");
+		return vertex;
+	}
+
+	/** after end() every primitive has been drawn exactly once */
+	private void checkDone() {
+		check(batch.vertexNum == 0 && batch.indexNum == 0,
+				"end() left vertices behind");
+		check(batch.drawCalls == draws, "drawCalls " + batch.drawCalls
+				+ ", drawn " + draws);
+		for (int i = 0; i < primitiveNum; i++) {
+			check(triangles[i] == sizes[i] - 2, "primitive " + i + " drew "
+					+ triangles[i] + " of " + (sizes[i] - 2) + " triangles");
+		}
+	}
+
+	private static int[] grow(int array[]) {
+		int newArray[] = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private static void check(boolean ok, String message) {
+		if (!ok)
+			throw new IllegalStateException("LightBatch: " + message);
+	}
+}
@@ -0,0 +1,261 @@
+package com.siondream.ld26;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer.Cell;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
+import com.badlogic.gdx.maps.tiled.tiles.StaticTiledMapTile;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Base64Coder;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.XmlReader;
+import com.badlogic.gdx.utils.XmlReader.Element;
+
+/**
+ * Walkability grids for the path finding benchmarks: the shipped levels and
+ * generated mazes and open maps, all seeded so every run searches the same maps.
+ *
+ * Grids are indexed [x][y] with y pointing up, as in NavGrid. Levels are read
+ * straight from the tmx files so no textures or backend are needed.
+ */
+public class BenchmarkMaps {
+	
+	private static final int WALL = 1;
+	private static final int FLOOR = 2;
+	
+	/**
+	 * @param levels directory with level01.tmx to level05.tmx
+	 * @param mazes whether to add the big generated maps
+	 * @return grids by name, in a fixed order
+	 */
+	public static LinkedHashMap<String, boolean[][]> create(String levels, boolean mazes) {
+		LinkedHashMap<String, boolean[][]> maps = new LinkedHashMap<String, boolean[][]>();
+		
+		for (int i = 1; i <= 5; ++i) {
+			String name = "level0" + i;
+			maps.put(name, level(new File(levels, name + ".tmx")));
+		}
+		
+		if (mazes) {
+			maps.put("maze257", maze(257, 257, 1, 0.0));
+			maps.put("maze513+loops", maze(513, 513, 2, 0.03));
+			maps.put("open512-20%", open(512, 512, 3, 0.2));
+		}
+		
+		return maps;
+	}
+	
+	/**
+	 * Reads the background layer of a level, cells with a walkable tile are true
+	 */
+	public static boolean[][] level(File file) {
+		Element root = new XmlReader().parse(new FileHandle(file).readString("UTF-8"));
+		IntArray walkableIds = new IntArray();
+		
+		for (Element tileset : root.getChildrenByName("tileset")) {
+			int firstId = tileset.getIntAttribute("firstgid");
+			
+			for (Element tile : tileset.getChildrenByName("tile")) {
+				for (Element property : tile.getChildrenByNameRecursively("property")) {
+					if (property.get("name").equals("walkable") && property.get("value").equals("true")) {
+						walkableIds.add(firstId + tile.getIntAttribute("id"));
+					}
+				}
+			}
+		}
+		
+		for (Element layer : root.getChildrenByName("layer")) {
+			if (!layer.get("name").equals(Globals.backgroundLayer)) {
+				continue;
+			}
+			
+			int width = layer.getIntAttribute("width");
+			int height = layer.getIntAttribute("height");
+			byte[] data = Base64Coder.decode(layer.getChildByName("data").getText().trim());
+			ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+			boolean[][] grid = new boolean[width][height];
+			
+			// Rows are stored top to bottom
+			for (int row = 0; row < height; ++row) {
+				for (int x = 0; x < width; ++x) {
+					grid[x][height - 1 - row] = walkableIds.contains(buffer.getInt());
+				}
+			}
+			
+			return grid;
+		}
+		
+		throw new IllegalArgumentException(file + " has no " + Globals.backgroundLayer + " layer");
+	}
+	
+	/**
+	 * Recursive backtracker maze, corridors on odd coordinates, with some extra
+	 * random openings that make loops
+	 */
+	public static boolean[][] maze(int width, int height, long seed, double extraOpen) {
+		boolean[][] grid = new boolean[width][height];
+		Random random = new Random(seed);
+		IntArray stack = new IntArray();
+		IntArray options = new IntArray();
+		int[] dx = { 2, -2, 0, 0 };
+		int[] dy = { 0, 0, 2, -2 };
+		
+		grid[1][1] = true;
+		stack.add(1);
+		stack.add(1);
+		
+		while (stack.size > 0) {
+			int x = stack.get(stack.size - 2);
+			int y = stack.get(stack.size - 1);
+			options.clear();
+			
+			for (int i = 0; i < dx.length; ++i) {
+				int nx = x + dx[i];
+				int ny = y + dy[i];
+				
+				if (nx > 0 && ny > 0 && nx < width - 1 && ny < height - 1 && !grid[nx][ny]) {
+					options.add(i);
+				}
+			}
+			
+			if (options.size == 0) {
+				stack.size -= 2;
+				continue;
+			}
+			
+			int i = options.get(random.nextInt(options.size));
+			grid[x + dx[i] / 2][y + dy[i] / 2] = true;
+			grid[x + dx[i]][y + dy[i]] = true;
+			stack.add(x + dx[i]);
+			stack.add(y + dy[i]);
+		}
+		
+		for (int x = 1; x < width - 1; ++x) {
+			for (int y = 1; y < height - 1; ++y) {
+				if (random.nextDouble() < extraOpen) {
+					grid[x][y] = true;
+				}
+			}
+		}
+		
+		return grid;
+	}
+	
+	/**
+	 * Open map with randomly scattered single cell walls
+	 */
+	public static boolean[][] open(int width, int height, long seed, double walls) {
+		boolean[][] grid = new boolean[width][height];
+		Random random = new Random(seed);
+		
+		for (int x = 0; x < width; ++x) {
+			for (int y = 0; y < height; ++y) {
+				grid[x][y] = random.nextDouble() >= walls;
+			}
+		}
+		
+		return grid;
+	}
+	
+	/**
+	 * @return origin and destination cells, x0, y0, x1, y1, both walkable
+	 */
+	public static Array<int[]> queries(boolean[][] grid, int count, long seed) {
+		Random random = new Random(seed);
+		Array<int[]> queries = new Array<int[]>();
+		int width = grid.length;
+		int height = grid[0].length;
+		
+		while (queries.size < count) {
+			int x0 = random.nextInt(width);
+			int y0 = random.nextInt(height);
+			int x1 = random.nextInt(width);
+			int y1 = random.nextInt(height);
+			
+			if (grid[x0][y0] && grid[x1][y1]) {
+				queries.add(new int[] { x0, y0, x1, y1 });
+			}
+		}
+		
+		return queries;
+	}
+	
+	/**
+	 * Builds a map NavGrid reads, walkable cells get a floor tile
+	 */
+	public static TiledMap toMap(boolean[][] grid) {
+		TiledMapTileSet tileset = new TiledMapTileSet();
+		tileset.setName(Globals.tileset);
+		
+		StaticTiledMapTile wall = new StaticTiledMapTile(new TextureRegion());
+		wall.setId(WALL);
+		tileset.putTile(WALL, wall);
+		
+		StaticTiledMapTile floor = new StaticTiledMapTile(new TextureRegion());
+		floor.setId(FLOOR);
+		floor.getProperties().put("walkable", "true");
+		tileset.putTile(FLOOR, floor);
+		
+		int width = grid.length;
+		int height = grid[0].length;
+		TiledMapTileLayer layer = new TiledMapTileLayer(width, height, 64, 64);
+		layer.setName(Globals.backgroundLayer);
+		
+		for (int x = 0; x < width; ++x) {
+			for (int y = 0; y < height; ++y) {
+				Cell cell = new Cell();
+				cell.setTile(grid[x][y]? floor : wall);
+				layer.setCell(x, y, cell);
+			}
+		}
+		
+		TiledMap map = new TiledMap();
+		map.getTileSets().addTileSet(tileset);
+		map.getLayers().add(layer);
+		return map;
+	}
+	
+	/**
+	 * @return fewest 8-connected moves between the cells, -1 if there is no path
+	 */
+	public static int shortestMoves(NavGrid grid, int origin, int destination) {
+		int[] moves = new int[grid.getNumCells()];
+		IntArray open = new IntArray();
+		
+		for (int i = 0; i < moves.length; ++i) {
+			moves[i] = -1;
+		}
+		
+		moves[origin] = 0;
+		open.add(origin);
+		
+		for (int next = 0; next < open.size; ++next) {
+			int cell = open.get(next);
+			
+			if (cell == destination) {
+				return moves[cell];
+			}
+			
+			int neighbours = grid.getNeighbours(cell);
+			
+			for (int direction = 0; direction < 8; ++direction) {
+				int neighbour = cell + grid.getOffset(direction);
+				
+				if ((neighbours & (1 << direction)) != 0 && moves[neighbour] == -1) {
+					moves[neighbour] = moves[cell] + 1;
+					open.add(neighbour);
+				}
+			}
+		}
+		
+		return -1;
+	}
+}
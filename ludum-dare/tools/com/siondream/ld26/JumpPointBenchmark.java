@@ -0,0 +1,100 @@
+package com.siondream.ld26;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Compares the default A*, A* with an admissible heuristic and Jump Point Search
+ * on the shipped levels and on big generated maps: nodes expanded and time per
+ * query, and how many paths are longer than the fewest moves found by a
+ * breadth first search.
+ *
+ * Run from the ludum-dare directory with the compiled game, gdx.jar and
+ * tween-engine-api.jar on the classpath:
+ * java com.siondream.ld26.JumpPointBenchmark [levels directory]
+ */
+public class JumpPointBenchmark {
+	
+	private static final String LEVELS = "../ludum-dare-android/assets/data/levels";
+	private static final int WARMUP = 3;
+	
+	public static void main(String[] args) {
+		LinkedHashMap<String, boolean[][]> maps = BenchmarkMaps.create(args.length > 0? args[0] : LEVELS, true);
+		Path path = new Path();
+		
+		for (Map.Entry<String, boolean[][]> entry : maps.entrySet()) {
+			boolean[][] cells = entry.getValue();
+			final NavGrid grid = new NavGrid(BenchmarkMaps.toMap(cells));
+			Array<int[]> queries = BenchmarkMaps.queries(cells, cells.length > 100? 100 : 500, 11);
+			
+			// Chebyshev distance, a lower bound when every move costs 1
+			GridSearch admissible = new GridSearch(grid) {
+				@Override
+				protected float h(int cell) {
+					int destination = getDestination();
+					return Math.max(Math.abs(grid.getX(cell) - grid.getX(destination)),
+									Math.abs(grid.getY(cell) - grid.getY(destination)));
+				}
+			};
+			
+			GridSearch[] searches = { new GridSearch(grid), admissible, new JumpPointSearch(grid) };
+			String[] names = { "A*", "A* admissible", "JPS" };
+			int[] shortest = new int[queries.size];
+			
+			for (int i = 0; i < queries.size; ++i) {
+				int[] query = queries.get(i);
+				shortest[i] = BenchmarkMaps.shortestMoves(grid,
+														  grid.getIndex(query[0], query[1]),
+														  grid.getIndex(query[2], query[3]));
+			}
+			
+			System.out.println(entry.getKey() + ", " + queries.size + " queries");
+			
+			for (int s = 0; s < searches.length; ++s) {
+				GridSearch search = searches[s];
+				
+				for (int i = 0; i < WARMUP; ++i) {
+					run(grid, search, queries, path, null);
+				}
+				
+				long[] stats = run(grid, search, queries, path, shortest);
+				System.out.println(String.format("  %-14s %8.0f expansions %8.3f ms  %4d longer than shortest",
+												 names[s],
+												 stats[0] / (double)queries.size,
+												 stats[1] / 1000000.0 / queries.size,
+												 stats[2]));
+			}
+		}
+	}
+	
+	/**
+	 * @return expansions, nanoseconds and paths longer than the shortest
+	 */
+	private static long[] run(NavGrid grid, GridSearch search, Array<int[]> queries, Path path, int[] shortest) {
+		long expansions = 0;
+		long time = 0;
+		long longer = 0;
+		
+		for (int i = 0; i < queries.size; ++i) {
+			int[] query = queries.get(i);
+			long start = System.nanoTime();
+			boolean found = search.search(grid.getIndex(query[0], query[1]), grid.getIndex(query[2], query[3]));
+			
+			if (found) {
+				search.getPath(path);
+			}
+			
+			time += System.nanoTime() - start;
+			expansions += search.getExpandedCount();
+			
+			// Paths have one waypoint per cell
+			if (shortest != null && (found? path.getSize() - 1 : -1) != shortest[i]) {
+				++longer;
+			}
+		}
+		
+		return new long[] { expansions, time, longer };
+	}
+}
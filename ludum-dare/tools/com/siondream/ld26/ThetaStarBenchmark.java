@@ -0,0 +1,79 @@
+package com.siondream.ld26;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Compares A*, Jump Point Search and Theta* on the shipped levels and on big
+ * generated maps: nodes expanded and time per query, summed Euclidean length of
+ * the paths found and how many waypoints they carry.
+ *
+ * Run from the ludum-dare directory with the compiled game, gdx.jar and
+ * tween-engine-api.jar on the classpath:
+ * java com.siondream.ld26.ThetaStarBenchmark [levels directory]
+ */
+public class ThetaStarBenchmark {
+	
+	private static final String LEVELS = "../ludum-dare-android/assets/data/levels";
+	private static final int WARMUP = 3;
+	
+	public static void main(String[] args) {
+		LinkedHashMap<String, boolean[][]> maps = BenchmarkMaps.create(args.length > 0? args[0] : LEVELS, true);
+		Path path = new Path();
+		
+		for (Map.Entry<String, boolean[][]> entry : maps.entrySet()) {
+			boolean[][] cells = entry.getValue();
+			NavGrid grid = new NavGrid(BenchmarkMaps.toMap(cells));
+			Array<int[]> queries = BenchmarkMaps.queries(cells, cells.length > 100? 100 : 500, 11);
+			GridSearch[] searches = { new GridSearch(grid), new JumpPointSearch(grid), new ThetaStarSearch(grid) };
+			String[] names = { "A*", "JPS", "Theta*" };
+			
+			System.out.println(entry.getKey() + ", " + queries.size + " queries");
+			
+			for (int s = 0; s < searches.length; ++s) {
+				GridSearch search = searches[s];
+				
+				for (int i = 0; i < WARMUP; ++i) {
+					run(grid, search, queries, path, new double[4]);
+				}
+				
+				double[] stats = new double[4];
+				run(grid, search, queries, path, stats);
+				System.out.println(String.format("  %-7s %7.0f expansions %8.3f ms  length %8.0f  %7.0f waypoints",
+												 names[s],
+												 stats[0] / queries.size,
+												 stats[1] / 1000000.0 / queries.size,
+												 stats[2],
+												 stats[3]));
+			}
+		}
+	}
+	
+	/**
+	 * Adds expansions, nanoseconds, path length and waypoints to stats
+	 */
+	private static void run(NavGrid grid, GridSearch search, Array<int[]> queries, Path path, double[] stats) {
+		for (int i = 0; i < queries.size; ++i) {
+			int[] query = queries.get(i);
+			long start = System.nanoTime();
+			boolean found = search.search(grid.getIndex(query[0], query[1]), grid.getIndex(query[2], query[3]));
+			
+			if (found) {
+				search.getPath(path);
+			}
+			
+			stats[1] += System.nanoTime() - start;
+			stats[0] += search.getExpandedCount();
+			
+			if (found) {
+				for (int j = 0; j + 1 < path.getSize(); ++j) {
+					stats[2] += path.get(j).dst(path.get(j + 1));
+				}
+				
+				stats[3] += path.getSize();
+			}
+		}
+	}
+}